@@ -0,0 +1,90 @@
+package com.sansoft.harmonystram;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+
+/**
+ * Network throughput estimate shared by the player and stream selection.
+ *
+ * <p>The live value comes from the player's {@link DefaultBandwidthMeter}; the latest one
+ * is persisted, so the first extraction after a cold start ranks audio streams against the
+ * last network seen instead of a fixed bitrate, and the meter starts from it too.
+ */
+final class BandwidthEstimator {
+
+    private static final String TAG = "BandwidthEstimator";
+    private static final String PREFS_NAME = "bandwidth_estimate";
+    private static final String KEY_BITRATE_BPS = "bitrate_bps";
+    private static final long PERSIST_INTERVAL_MS = 30_000L;
+
+    // Below this a link is treated as weak and audio goes to the lowest adequate bitrate;
+    // at or above GOOD_LINK_BPS it goes to the best available one.
+    static final long WEAK_LINK_BPS = 600_000L;
+    static final long GOOD_LINK_BPS = 3_000_000L;
+    static final long DEFAULT_AUDIO_TARGET_BPS = 128_000L;
+    // Lowest bitrate still worth listening to (itag 249 / 139 territory).
+    static final long MIN_ADEQUATE_AUDIO_BPS = 48_000L;
+    static final long BEST_AUDIO_TARGET_BPS = 320_000L;
+
+    private volatile long estimateBps;
+    private SharedPreferences preferences;
+    private long lastPersistedAtMs;
+
+    /**
+     * Loads the persisted estimate. Call once the service has a context.
+     */
+    void attach(@NonNull Context context) {
+        preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long persisted = preferences.getLong(KEY_BITRATE_BPS, 0L);
+        if (estimateBps <= 0L) estimateBps = persisted;
+        Log.d(TAG, "Bandwidth prior: " + persisted + " bps");
+    }
+
+    /**
+     * Builds the player's meter, seeded with the persisted estimate and reporting every
+     * sample back here on {@code handler}'s thread.
+     */
+    @NonNull
+    BandwidthMeter createMeter(@NonNull Context context, @NonNull Handler handler) {
+        DefaultBandwidthMeter.Builder builder = new DefaultBandwidthMeter.Builder(context);
+        long prior = estimateBps;
+        if (prior > 0L) builder.setInitialBitrateEstimate(prior);
+        DefaultBandwidthMeter meter = builder.build();
+        meter.addEventListener(handler, (elapsedMs, bytesTransferred, bitrateEstimate) -> update(bitrateEstimate));
+        return meter;
+    }
+
+    /**
+     * Current estimate in bits per second, or 0 when nothing has been measured yet.
+     */
+    long estimateBps() {
+        return estimateBps;
+    }
+
+    private void update(long bitrateEstimate) {
+        if (bitrateEstimate <= 0L) return;
+        estimateBps = bitrateEstimate;
+        long nowMs = System.currentTimeMillis();
+        if (preferences == null || nowMs - lastPersistedAtMs < PERSIST_INTERVAL_MS) return;
+        lastPersistedAtMs = nowMs;
+        preferences.edit().putLong(KEY_BITRATE_BPS, bitrateEstimate).apply();
+    }
+
+    /**
+     * Audio bitrate to aim for on a link of {@code estimateBps}: the lowest adequate one
+     * when weak, the best one when good, 128 kbps in between or when unknown.
+     */
+    static long targetAudioBitrate(long estimateBps) {
+        if (estimateBps <= 0L) return DEFAULT_AUDIO_TARGET_BPS;
+        if (estimateBps < WEAK_LINK_BPS) return MIN_ADEQUATE_AUDIO_BPS;
+        if (estimateBps >= GOOD_LINK_BPS) return BEST_AUDIO_TARGET_BPS;
+        return DEFAULT_AUDIO_TARGET_BPS;
+    }
+}
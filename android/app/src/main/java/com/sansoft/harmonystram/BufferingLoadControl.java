@@ -0,0 +1,169 @@
+package com.sansoft.harmonystram;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * {@link LoadControl} whose buffer sizes follow a switchable {@link Profile}.
+ *
+ * <p>ExoPlayer's default is sized for video: it wants 2.5 s buffered before starting and
+ * keeps up to 50 s of media in memory, which is slow to start and wasteful for a 128 kbps
+ * audio stream playing behind the lock screen. Each profile is backed by its own
+ * {@link DefaultLoadControl} over one shared allocator; {@link #setProfile} is called from
+ * the main thread and takes effect on the playback thread's next load decision.
+ */
+final class BufferingLoadControl implements LoadControl {
+
+    private static final String TAG = "BufferingLoadControl";
+
+    enum Profile {
+        //            minMs   maxMs    startMs rebufferMs targetBytes
+        AUDIO_FAST_START(15_000, 60_000, 500, 1_500, 4 * 1024 * 1024),
+        AUDIO_BACKGROUND(30_000, 120_000, 1_000, 3_000, 2 * 1024 * 1024),
+        // Roaming or data saver: a skip throws away at most half a minute of audio.
+        AUDIO_DATA_SAVER(10_000, 30_000, 500, 1_500, 1024 * 1024),
+        VIDEO(20_000, 50_000, 1_500, 3_000, C.LENGTH_UNSET);
+
+        final int minBufferMs;
+        final int maxBufferMs;
+        final int bufferForPlaybackMs;
+        final int bufferForPlaybackAfterRebufferMs;
+        // C.LENGTH_UNSET lets ExoPlayer size the budget from the selected tracks.
+        final int targetBufferBytes;
+
+        Profile(int minBufferMs, int maxBufferMs, int bufferForPlaybackMs,
+                int bufferForPlaybackAfterRebufferMs, int targetBufferBytes) {
+            this.minBufferMs = minBufferMs;
+            this.maxBufferMs = maxBufferMs;
+            this.bufferForPlaybackMs = bufferForPlaybackMs;
+            this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+            this.targetBufferBytes = targetBufferBytes;
+        }
+
+        /**
+         * Video keeps its profile in the background: its renderer still consumes the
+         * video track, so shrinking the buffer would only cause rebuffers.
+         */
+        static Profile select(boolean videoMode, boolean uiVisible, boolean constrained) {
+            if (videoMode) return VIDEO;
+            if (constrained) return AUDIO_DATA_SAVER;
+            return uiVisible ? AUDIO_FAST_START : AUDIO_BACKGROUND;
+        }
+    }
+
+    private final DefaultAllocator allocator =
+            new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    private final Map<Profile, DefaultLoadControl> delegates = new EnumMap<>(Profile.class);
+
+    private volatile Profile requested;
+    // Playback thread only.
+    private Profile applied;
+    private Renderer[] lastRenderers;
+    private TrackGroupArray lastTrackGroups;
+    private ExoTrackSelection[] lastTrackSelections;
+
+    BufferingLoadControl(@NonNull Profile initial) {
+        for (Profile profile : Profile.values()) {
+            // Byte budgets only bind when set explicitly; otherwise time thresholds win.
+            delegates.put(profile, new DefaultLoadControl.Builder()
+                    .setAllocator(allocator)
+                    .setBufferDurationsMs(profile.minBufferMs, profile.maxBufferMs,
+                            profile.bufferForPlaybackMs, profile.bufferForPlaybackAfterRebufferMs)
+                    .setTargetBufferBytes(profile.targetBufferBytes)
+                    .setPrioritizeTimeOverSizeThresholds(profile.targetBufferBytes == C.LENGTH_UNSET)
+                    .build());
+        }
+        requested = initial;
+        applied = initial;
+    }
+
+    void setProfile(@NonNull Profile profile) {
+        if (requested == profile) return;
+        Log.d(TAG, "Buffering profile " + requested + " -> " + profile);
+        requested = profile;
+    }
+
+    @NonNull
+    Profile getProfile() {
+        return requested;
+    }
+
+    // The delegate for the latest requested profile, brought up to date with the current
+    // tracks so its byte budget matches what is actually playing.
+    private DefaultLoadControl active() {
+        Profile wanted = requested;
+        if (wanted != applied) {
+            applied = wanted;
+            if (lastRenderers != null) {
+                delegates.get(wanted).onTracksSelected(lastRenderers, lastTrackGroups, lastTrackSelections);
+            }
+        }
+        return delegates.get(applied);
+    }
+
+    @Override
+    public void onPrepared() {
+        for (DefaultLoadControl delegate : delegates.values()) delegate.onPrepared();
+    }
+
+    @Override
+    public void onTracksSelected(@NonNull Renderer[] renderers, @NonNull TrackGroupArray trackGroups,
+                                 @NonNull ExoTrackSelection[] trackSelections) {
+        lastRenderers = renderers;
+        lastTrackGroups = trackGroups;
+        lastTrackSelections = trackSelections;
+        active().onTracksSelected(renderers, trackGroups, trackSelections);
+    }
+
+    @Override
+    public void onStopped() {
+        lastRenderers = null;
+        for (DefaultLoadControl delegate : delegates.values()) delegate.onStopped();
+    }
+
+    @Override
+    public void onReleased() {
+        lastRenderers = null;
+        for (DefaultLoadControl delegate : delegates.values()) delegate.onReleased();
+    }
+
+    @NonNull
+    @Override
+    public Allocator getAllocator() {
+        return allocator;
+    }
+
+    @Override
+    public long getBackBufferDurationUs() {
+        return active().getBackBufferDurationUs();
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe() {
+        return active().retainBackBufferFromKeyframe();
+    }
+
+    @Override
+    public boolean shouldContinueLoading(long playbackPositionUs, long bufferedDurationUs, float playbackSpeed) {
+        return active().shouldContinueLoading(playbackPositionUs, bufferedDurationUs, playbackSpeed);
+    }
+
+    @Override
+    public boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed,
+                                       boolean rebuffering, long targetLiveOffsetUs) {
+        return active().shouldStartPlayback(bufferedDurationUs, playbackSpeed, rebuffering, targetLiveOffsetUs);
+    }
+}
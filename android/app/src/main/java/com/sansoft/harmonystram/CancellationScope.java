@@ -0,0 +1,118 @@
+package com.sansoft.harmonystram;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import okhttp3.Call;
+
+/**
+ * Cancellation handle for one unit of extractor work.
+ *
+ * <p>NewPipe calls {@link DownloaderImpl} synchronously on the extracting thread, so the
+ * scope is bound to that thread for the duration of the work. The downloader registers
+ * every OkHttp {@link Call} it starts, and {@link #cancel()} aborts whichever call is in
+ * flight and fails any later request immediately.
+ */
+final class CancellationScope {
+
+    private static final ThreadLocal<CancellationScope> CURRENT = new ThreadLocal<>();
+
+    private final Set<Call> activeCalls = new HashSet<>();
+    private final List<CancellationScope> children = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    @Nullable
+    static CancellationScope current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds {@code scope} to the calling thread and returns the previous binding, which
+     * the caller must restore with {@link #restore(CancellationScope)}.
+     */
+    @Nullable
+    static CancellationScope bind(@Nullable CancellationScope scope) {
+        CancellationScope previous = CURRENT.get();
+        CURRENT.set(scope);
+        return previous;
+    }
+
+    static void restore(@Nullable CancellationScope previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Creates a scope that is cancelled together with {@code parent}, or a standalone scope
+     * when there is no parent. Used to run parallel attempts that can also lose a race.
+     */
+    @NonNull
+    static CancellationScope childOf(@Nullable CancellationScope parent) {
+        CancellationScope child = new CancellationScope();
+        if (parent == null) return child;
+        synchronized (parent.activeCalls) {
+            if (!parent.cancelled) {
+                parent.children.add(child);
+                return child;
+            }
+        }
+        child.cancel();
+        return child;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        List<Call> calls;
+        List<CancellationScope> childScopes;
+        synchronized (activeCalls) {
+            if (cancelled) return;
+            cancelled = true;
+            calls = new ArrayList<>(activeCalls);
+            activeCalls.clear();
+            childScopes = new ArrayList<>(children);
+            children.clear();
+        }
+        for (Call call : calls) {
+            call.cancel();
+        }
+        for (CancellationScope child : childScopes) {
+            child.cancel();
+        }
+    }
+
+    void throwIfCancelled() throws InterruptedIOException {
+        if (cancelled) throw new InterruptedIOException("Extractor request cancelled");
+    }
+
+    /**
+     * Tracks {@code call} until {@link #unregister(Call)}. Fails fast if already cancelled.
+     */
+    void register(@NonNull Call call) throws InterruptedIOException {
+        synchronized (activeCalls) {
+            if (!cancelled) {
+                activeCalls.add(call);
+                return;
+            }
+        }
+        call.cancel();
+        throwIfCancelled();
+    }
+
+    void unregister(@NonNull Call call) {
+        synchronized (activeCalls) {
+            activeCalls.remove(call);
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.sansoft.harmonystram;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads googlevideo streams as a series of bounded byte-range requests instead of one
+ * long-lived GET.
+ *
+ * <p>The CDN rate-limits a single connection to roughly real time once it has served a
+ * burst, but every fresh range request starts at full speed. The current range is
+ * streamed straight from its upstream request, so the player gets bytes as soon as they
+ * arrive. Only the next range is pipelined: a prefetch thread opens it and reads ahead into
+ * a bounded buffer while the player consumes the current one. Other hosts, and requests
+ * already smaller than a chunk, pass straight through to the upstream.
+ */
+final class ChunkedRangeDataSource implements DataSource {
+
+    // Read-ahead per data source for the next range; the prefetch waits once it is full.
+    static final int PREFETCH_BUFFER_BYTES = 256 * 1024;
+    private static final int PREFETCH_THREADS = 2;
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 30L;
+
+    static final class Factory implements DataSource.Factory {
+        private final DataSource.Factory upstreamFactory;
+        private final int chunkBytes;
+        private final ThreadPoolExecutor prefetchExecutor;
+
+        /**
+         * @param chunkBytes bytes per range request; zero or less disables chunking.
+         */
+        Factory(@NonNull DataSource.Factory upstreamFactory, int chunkBytes) {
+            this.upstreamFactory = upstreamFactory;
+            this.chunkBytes = chunkBytes;
+            final AtomicInteger count = new AtomicInteger();
+            prefetchExecutor = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS,
+                    IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "chunk-prefetch-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            prefetchExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        @NonNull
+        @Override
+        public DataSource createDataSource() {
+            return new ChunkedRangeDataSource(upstreamFactory, chunkBytes, prefetchExecutor);
+        }
+
+        /**
+         * Stops prefetching; open sources keep working, reading every range directly.
+         */
+        void release() {
+            prefetchExecutor.shutdownNow();
+        }
+    }
+
+    private final DataSource.Factory upstreamFactory;
+    private final int chunkBytes;
+    private final Executor prefetchExecutor;
+    private final List<TransferListener> transferListeners = new ArrayList<>();
+
+    @Nullable private DataSource passthrough;
+    @Nullable private RangeReader reader;
+    @Nullable private Uri uri;
+
+    private ChunkedRangeDataSource(DataSource.Factory upstreamFactory, int chunkBytes, Executor prefetchExecutor) {
+        this.upstreamFactory = upstreamFactory;
+        this.chunkBytes = chunkBytes;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    @Override
+    public void addTransferListener(@NonNull TransferListener transferListener) {
+        transferListeners.add(transferListener);
+    }
+
+    @Override
+    public long open(@NonNull final DataSpec dataSpec) throws IOException {
+        this.uri = dataSpec.uri;
+        if (!isChunkable(dataSpec)) {
+            passthrough = createUpstream();
+            return passthrough.open(dataSpec);
+        }
+
+        long end = dataSpec.length == C.LENGTH_UNSET ? C.LENGTH_UNSET : dataSpec.position + dataSpec.length;
+        reader = new RangeReader((start, length) -> {
+            DataSource source = createUpstream();
+            source.open(dataSpec.subrange(start - dataSpec.position, length));
+            return new UpstreamRange(source);
+        }, chunkBytes, prefetchExecutor, PREFETCH_BUFFER_BYTES, dataSpec.position, end);
+        long resourceEnd = reader.open();
+        return resourceEnd == C.LENGTH_UNSET ? C.LENGTH_UNSET : resourceEnd - dataSpec.position;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        if (passthrough != null) return passthrough.read(buffer, offset, length);
+        if (reader == null) throw new IOException("Data source not open");
+        return reader.read(buffer, offset, length);
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return uri;
+    }
+
+    @NonNull
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return passthrough != null ? passthrough.getResponseHeaders() : Collections.emptyMap();
+    }
+
+    @Override
+    public void close() throws IOException {
+        uri = null;
+        RangeReader openReader = reader;
+        reader = null;
+        if (openReader != null) openReader.close();
+        DataSource source = passthrough;
+        passthrough = null;
+        if (source != null) source.close();
+    }
+
+    private boolean isChunkable(DataSpec spec) {
+        if (chunkBytes <= 0 || spec.uri == null) return false;
+        String host = spec.uri.getHost();
+        if (host == null || !host.toLowerCase(Locale.US).endsWith("googlevideo.com")) return false;
+        return spec.length == C.LENGTH_UNSET || spec.length > chunkBytes;
+    }
+
+    private DataSource createUpstream() {
+        DataSource source = upstreamFactory.createDataSource();
+        for (TransferListener listener : transferListeners) {
+            source.addTransferListener(listener);
+        }
+        return source;
+    }
+
+    // -------------------------------------------------------------------------
+    // Ranges
+    // -------------------------------------------------------------------------
+    /** One open range request. */
+    interface RangeStream {
+        int read(@NonNull byte[] buffer, int offset, int length) throws IOException;
+
+        /** Total resource length from the response, or {@link C#LENGTH_UNSET}. */
+        long resourceLength();
+
+        void close();
+    }
+
+    interface RangeOpener {
+        @NonNull
+        RangeStream open(long start, long length) throws IOException;
+    }
+
+    private static final class UpstreamRange implements RangeStream {
+        private final DataSource source;
+
+        UpstreamRange(DataSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            return source.read(buffer, offset, length);
+        }
+
+        @Override
+        public long resourceLength() {
+            return parseResourceLength(source.getResponseHeaders());
+        }
+
+        @Override
+        public void close() {
+            try {
+                source.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Splits {@code [start, end)} into ranges of at most {@code chunkBytes}, reads the
+     * current one directly and pipelines the next through a {@link Prefetch}. With an
+     * unknown end, the first response's Content-Range total fills it in; without one, a
+     * range that comes back short marks the end of the resource.
+     */
+    static final class RangeReader {
+        private final RangeOpener opener;
+        private final int chunkBytes;
+        private final Executor prefetchExecutor;
+        private final int prefetchBufferBytes;
+
+        private long position;
+        private long end;
+        private long rangeEnd;
+        @Nullable private RangeStream current;
+        private boolean currentPrefetched;
+        @Nullable private Prefetch next;
+
+        RangeReader(@NonNull RangeOpener opener, int chunkBytes, @NonNull Executor prefetchExecutor,
+                    int prefetchBufferBytes, long start, long end) {
+            this.opener = opener;
+            this.chunkBytes = chunkBytes;
+            this.prefetchExecutor = prefetchExecutor;
+            this.prefetchBufferBytes = prefetchBufferBytes;
+            this.position = start;
+            this.end = end;
+        }
+
+        /**
+         * Opens the first range and returns the end of the read, or {@link C#LENGTH_UNSET}
+         * when neither the request nor the response says.
+         */
+        long open() throws IOException {
+            openRange(null);
+            if (end == C.LENGTH_UNSET && current != null && current.resourceLength() != C.LENGTH_UNSET) {
+                end = current.resourceLength();
+                rangeEnd = Math.min(rangeEnd, end);
+            }
+            prefetchNext();
+            return end;
+        }
+
+        int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            while (true) {
+                if (end != C.LENGTH_UNSET && position >= end) return C.RESULT_END_OF_INPUT;
+                RangeStream stream = current;
+                if (stream == null) return C.RESULT_END_OF_INPUT;
+
+                int count = C.RESULT_END_OF_INPUT;
+                try {
+                    if (position < rangeEnd) {
+                        count = stream.read(buffer, offset, (int) Math.min(length, rangeEnd - position));
+                    }
+                } catch (IOException e) {
+                    if (!currentPrefetched) throw e;
+                    // The read-ahead connection went bad; fetch the rest of the range directly.
+                    stream.close();
+                    current = opener.open(position, rangeEnd - position);
+                    currentPrefetched = false;
+                    continue;
+                }
+                if (count != C.RESULT_END_OF_INPUT) {
+                    position += count;
+                    return count;
+                }
+
+                stream.close();
+                current = null;
+                // A range that ends early ends the resource.
+                if (position < rangeEnd) return C.RESULT_END_OF_INPUT;
+                if (end != C.LENGTH_UNSET && position >= end) return C.RESULT_END_OF_INPUT;
+                Prefetch pending = next;
+                next = null;
+                openRange(pending != null && pending.start == position ? pending : null);
+                if (pending != null && current != pending) pending.close();
+                prefetchNext();
+            }
+        }
+
+        void close() {
+            Prefetch pending = next;
+            next = null;
+            if (pending != null) pending.close();
+            RangeStream stream = current;
+            current = null;
+            if (stream != null) stream.close();
+        }
+
+        long rangeLength(long start) {
+            return end == C.LENGTH_UNSET ? chunkBytes : Math.min(chunkBytes, end - start);
+        }
+
+        // Takes over the prefetch when it is already running, else opens the range here.
+        private void openRange(@Nullable Prefetch prefetch) throws IOException {
+            long length = rangeLength(position);
+            rangeEnd = position + length;
+            if (prefetch != null && prefetch.claim()) {
+                current = prefetch;
+                currentPrefetched = true;
+                return;
+            }
+            current = opener.open(position, length);
+            currentPrefetched = false;
+        }
+
+        private void prefetchNext() {
+            if (end != C.LENGTH_UNSET && rangeEnd >= end) return;
+            Prefetch prefetch = new Prefetch(opener, rangeEnd, rangeLength(rangeEnd), prefetchBufferBytes);
+            try {
+                prefetchExecutor.execute(prefetch);
+                next = prefetch;
+            } catch (RejectedExecutionException released) {
+                // Factory released: the next range is opened directly when it is reached.
+            }
+        }
+    }
+
+    /**
+     * Reads one range ahead on a prefetch thread into a ring buffer of bounded size, and
+     * hands the bytes to the loading thread through {@link #read}.
+     */
+    static final class Prefetch implements RangeStream, Runnable {
+        private static final int READ_BYTES = 16 * 1024;
+
+        final long start;
+        private final long length;
+        private final RangeOpener opener;
+        private final int capacity;
+
+        @Nullable private byte[] ring;
+        private int head;
+        private int count;
+        private boolean started;
+        private boolean finished;
+        private boolean closed;
+        @Nullable private IOException failure;
+        private long resourceLength = C.LENGTH_UNSET;
+
+        Prefetch(RangeOpener opener, long start, long length, int capacity) {
+            this.opener = opener;
+            this.start = start;
+            this.length = length;
+            this.capacity = capacity;
+        }
+
+        /**
+         * True when the prefetch has started and the caller may read from it; a prefetch
+         * still waiting for a thread is cancelled instead, so it cannot hold up the reader.
+         */
+        synchronized boolean claim() {
+            if (!started || closed) {
+                closed = true;
+                notifyAll();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (closed) return;
+                started = true;
+                ring = new byte[capacity];
+            }
+            RangeStream stream = null;
+            try {
+                stream = opener.open(start, length);
+                synchronized (this) {
+                    resourceLength = stream.resourceLength();
+                }
+                byte[] chunk = new byte[READ_BYTES];
+                while (true) {
+                    int read = stream.read(chunk, 0, chunk.length);
+                    if (read == C.RESULT_END_OF_INPUT || !write(chunk, read)) break;
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                }
+            } finally {
+                if (stream != null) stream.close();
+                synchronized (this) {
+                    finished = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        // Blocks while the buffer is full; false once the reader has gone away.
+        private synchronized boolean write(byte[] data, int length) throws InterruptedIOException {
+            int offset = 0;
+            while (offset < length) {
+                while (count == capacity && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Prefetch interrupted");
+                    }
+                }
+                if (closed) return false;
+                int tail = (head + count) % capacity;
+                int n = Math.min(length - offset, Math.min(capacity - count, capacity - tail));
+                System.arraycopy(data, offset, ring, tail, n);
+                count += n;
+                offset += n;
+                notifyAll();
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            while (count == 0 && !finished && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for media range");
+                }
+            }
+            if (count > 0) {
+                int n = Math.min(length, Math.min(count, capacity - head));
+                System.arraycopy(ring, head, buffer, offset, n);
+                head = (head + n) % capacity;
+                count -= n;
+                notifyAll();
+                return n;
+            }
+            if (failure != null) throw failure;
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        @Override
+        public synchronized long resourceLength() {
+            return resourceLength;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            ring = null;
+            count = 0;
+            notifyAll();
+        }
+    }
+
+    // "Content-Range: bytes 0-1048575/3456789" -> 3456789
+    static long parseResourceLength(@Nullable Map<String, List<String>> headers) {
+        if (headers == null) return C.LENGTH_UNSET;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() == null || !"content-range".equalsIgnoreCase(header.getKey())) continue;
+            List<String> values = header.getValue();
+            if (values == null || values.isEmpty()) continue;
+            String value = values.get(0);
+            int slash = value == null ? -1 : value.lastIndexOf('/');
+            if (slash < 0) continue;
+            try {
+                return Long.parseLong(value.substring(slash + 1).trim());
+            } catch (NumberFormatException ignored) {
+                return C.LENGTH_UNSET;
+            }
+        }
+        return C.LENGTH_UNSET;
+    }
+}
@@ -0,0 +1,108 @@
+package com.sansoft.harmonystram;
+
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.CookieManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-host cache of the WebView's cookie headers.
+ *
+ * <p>{@link CookieManager#getCookie(String)} is a synchronous call into the WebView cookie
+ * store, and an extraction issues a dozen requests. The extractor downloader and the
+ * player data source read from here instead, so each host costs one lookup until the
+ * WebView's cookies change. {@link #invalidate()} is called after page navigation and when
+ * the web app reports a sign-in or sign-out; the TTL bounds staleness from cookie changes
+ * nobody reported.
+ */
+final class CookieSnapshot {
+
+    private static final String TAG = "CookieSnapshot";
+    private static final long MAX_AGE_MS = 10 * 60 * 1000L;
+    private static final String YOUTUBE_URL = "https://www.youtube.com/";
+
+    private static final class Entry {
+        final String header;
+        final long readAtMs;
+
+        Entry(String header, long readAtMs) {
+            this.header = header;
+            this.readAtMs = readAtMs;
+        }
+    }
+
+    private static final Map<String, Entry> ENTRIES = new HashMap<>();
+    private static long generation;
+
+    private CookieSnapshot() {
+    }
+
+    /**
+     * Cookie header for {@code url}, or "" when there is none. googlevideo URLs fall back
+     * to the youtube.com cookies, which media requests can still require.
+     */
+    @NonNull
+    static String headerFor(@Nullable String url) {
+        if (url == null || url.trim().isEmpty()) return "";
+        String host = hostOf(url);
+        if (host.isEmpty()) return "";
+        String header = lookup(host, url);
+        if (header.isEmpty() && host.endsWith("googlevideo.com")) {
+            header = lookup("www.youtube.com", YOUTUBE_URL);
+        }
+        return header;
+    }
+
+    /**
+     * Drops every cached header, e.g. after a navigation or an auth change in the WebView.
+     */
+    static void invalidate() {
+        synchronized (ENTRIES) {
+            generation++;
+            ENTRIES.clear();
+        }
+    }
+
+    private static String lookup(String host, String url) {
+        long startGeneration;
+        long nowMs = System.currentTimeMillis();
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(host);
+            if (entry != null && nowMs - entry.readAtMs < MAX_AGE_MS) return entry.header;
+            startGeneration = generation;
+        }
+        String header = readCookieManager(url);
+        synchronized (ENTRIES) {
+            // An invalidate() during the read means this value may already be stale.
+            if (generation == startGeneration) ENTRIES.put(host, new Entry(header, nowMs));
+        }
+        return header;
+    }
+
+    private static String readCookieManager(String url) {
+        try {
+            CookieManager cookieManager = CookieManager.getInstance();
+            if (cookieManager == null) return "";
+            String cookies = cookieManager.getCookie(url);
+            return cookies == null ? "" : cookies.trim();
+        } catch (Throwable t) {
+            Log.w(TAG, "Unable to read WebView cookies", t);
+            return "";
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = Uri.parse(url.trim()).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.US);
+        } catch (Throwable ignored) {
+            return "";
+        }
+    }
+}
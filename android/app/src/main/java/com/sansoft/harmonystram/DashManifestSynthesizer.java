@@ -0,0 +1,136 @@
+package com.sansoft.harmonystram;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds a static DASH manifest from NewPipe's itag list, so separate video-only and
+ * audio streams play as one adaptive source instead of a silent progressive video.
+ *
+ * <p>Every representation is a single googlevideo URL addressed through its init and
+ * index byte ranges ({@code SegmentBase}); streams without those ranges cannot be
+ * described this way and are skipped by the caller.
+ */
+final class DashManifestSynthesizer {
+
+    static final class Representation {
+        final boolean video;
+        final int itag;
+        final String mimeType;
+        final String codecs;
+        final int bitrate;
+        final String url;
+        final long initStart;
+        final long initEnd;
+        final long indexStart;
+        final long indexEnd;
+        int width;
+        int height;
+        int fps;
+        int sampleRate;
+        int channels;
+
+        Representation(boolean video, int itag, String mimeType, String codecs, int bitrate, String url,
+                       long initStart, long initEnd, long indexStart, long indexEnd) {
+            this.video = video;
+            this.itag = itag;
+            this.mimeType = mimeType;
+            this.codecs = codecs;
+            this.bitrate = bitrate;
+            this.url = url;
+            this.initStart = initStart;
+            this.initEnd = initEnd;
+            this.indexStart = indexStart;
+            this.indexEnd = indexEnd;
+        }
+
+        boolean hasSegmentIndex() {
+            return initEnd > initStart && indexEnd > indexStart && indexStart > initEnd;
+        }
+    }
+
+    private DashManifestSynthesizer() {
+    }
+
+    /**
+     * Returns the manifest XML, or {@code null} when no representation carries a usable
+     * segment index.
+     */
+    @Nullable
+    static String build(long durationMs, @NonNull List<Representation> representations) {
+        StringBuilder video = new StringBuilder();
+        StringBuilder audio = new StringBuilder();
+        for (Representation r : representations) {
+            if (r == null || !r.hasSegmentIndex()) continue;
+            appendRepresentation(r.video ? video : audio, r);
+        }
+        if (video.length() == 0 && audio.length() == 0) return null;
+
+        StringBuilder xml = new StringBuilder(1024 + video.length() + audio.length());
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\"")
+                .append(" profiles=\"urn:mpeg:dash:profile:isoff-on-demand:2011\" type=\"static\"")
+                .append(" minBufferTime=\"PT1.5S\"");
+        if (durationMs > 0L) {
+            xml.append(" mediaPresentationDuration=\"").append(isoDuration(durationMs)).append('"');
+        }
+        xml.append("><Period>");
+        if (video.length() > 0) {
+            xml.append("<AdaptationSet id=\"0\" contentType=\"video\" subsegmentAlignment=\"true\">")
+                    .append(video).append("</AdaptationSet>");
+        }
+        if (audio.length() > 0) {
+            xml.append("<AdaptationSet id=\"1\" contentType=\"audio\" subsegmentAlignment=\"true\">")
+                    .append(audio).append("</AdaptationSet>");
+        }
+        return xml.append("</Period></MPD>").toString();
+    }
+
+    private static void appendRepresentation(StringBuilder out, Representation r) {
+        out.append("<Representation id=\"").append(r.itag).append('"')
+                .append(" mimeType=\"").append(escape(r.mimeType)).append('"')
+                .append(" codecs=\"").append(escape(r.codecs)).append('"')
+                .append(" bandwidth=\"").append(Math.max(1, r.bitrate)).append('"');
+        if (r.video) {
+            if (r.width > 0) out.append(" width=\"").append(r.width).append('"');
+            if (r.height > 0) out.append(" height=\"").append(r.height).append('"');
+            if (r.fps > 0) out.append(" frameRate=\"").append(r.fps).append('"');
+        } else if (r.sampleRate > 0) {
+            out.append(" audioSamplingRate=\"").append(r.sampleRate).append('"');
+        }
+        out.append('>');
+        if (!r.video) {
+            out.append("<AudioChannelConfiguration")
+                    .append(" schemeIdUri=\"urn:mpeg:dash:23003:3:audio_channel_configuration:2011\"")
+                    .append(" value=\"").append(r.channels > 0 ? r.channels : 2).append("\"/>");
+        }
+        out.append("<BaseURL>").append(escape(r.url)).append("</BaseURL>")
+                .append("<SegmentBase indexRange=\"").append(r.indexStart).append('-').append(r.indexEnd).append('"')
+                .append("><Initialization range=\"").append(r.initStart).append('-').append(r.initEnd).append("\"/>")
+                .append("</SegmentBase></Representation>");
+    }
+
+    // "PT212.345S"
+    static String isoDuration(long durationMs) {
+        return String.format(Locale.US, "PT%d.%03dS", durationMs / 1000L, durationMs % 1000L);
+    }
+
+    private static String escape(@Nullable String value) {
+        if (value == null) return "";
+        StringBuilder out = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': out.append("&amp;"); break;
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '"': out.append("&quot;"); break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -5,52 +5,81 @@ import org.schabi.newpipe.extractor.downloader.Request;
 import org.schabi.newpipe.extractor.downloader.Response;
 import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
-import android.webkit.CookieManager;
+import android.content.Context;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
+import okhttp3.Cache;
 import okhttp3.MediaType;
-import okhttp3.ConnectionSpec;
 import okhttp3.OkHttpClient;
-import okhttp3.TlsVersion;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 
 public class DownloaderImpl extends Downloader {
     private static final String TAG = "ExtractorDownloader";
 
-    private static final String FALLBACK_USER_AGENT =
-            YouTubeStreamExtractor.EXTRACTOR_USER_AGENT;
+    private static final String HTTP_CACHE_DIR = "extractor-http";
+    private static final long HTTP_CACHE_MAX_BYTES = 16L * 1024L * 1024L;
 
     private static final RequestBody EMPTY_BODY =
             RequestBody.create(new byte[0], (MediaType) null);
 
-    private static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder()
-            .followRedirects(true)
-            .followSslRedirects(true)
-            .retryOnConnectionFailure(true)
-            .connectTimeout(20, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .connectionSpecs(java.util.Arrays.asList(
-                    new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS)
-                            .tlsVersions(TlsVersion.TLS_1_3, TlsVersion.TLS_1_2)
-                            .build(),
-                    new ConnectionSpec.Builder(ConnectionSpec.COMPATIBLE_TLS)
-                            .tlsVersions(TlsVersion.TLS_1_2, TlsVersion.TLS_1_1, TlsVersion.TLS_1_0)
-                            .build(),
-                    ConnectionSpec.CLEARTEXT))
-            .build();
+    private final OkHttpClient httpClient;
+    @Nullable private final ExtractorFixtures fixtures;
+    private final boolean replayOnly;
+
+    private DownloaderImpl(OkHttpClient httpClient, @Nullable ExtractorFixtures fixtures, boolean replayOnly) {
+        this.httpClient = httpClient;
+        this.fixtures = fixtures;
+        this.replayOnly = replayOnly;
+    }
 
     public static DownloaderImpl create() {
-        return new DownloaderImpl();
+        return new DownloaderImpl(HttpStack.client(), null, false);
+    }
+
+    /**
+     * Downloader with a size-bounded disk cache for the responses that
+     * {@link ExtractorCachePolicy} marks cacheable (player JS and its bootstrap pages),
+     * so cold-start extraction does not download them again.
+     */
+    public static DownloaderImpl create(Context context) {
+        Cache cache = new Cache(
+                new File(context.getCacheDir(), HTTP_CACHE_DIR),
+                HTTP_CACHE_MAX_BYTES);
+        return new DownloaderImpl(HttpStack.client().newBuilder()
+                .cache(cache)
+                .addNetworkInterceptor(new ExtractorCachePolicy.NetworkInterceptor())
+                .build(), null, false);
+    }
+
+    /**
+     * Live downloader that also writes every request/response pair to {@code fixtureDir}.
+     */
+    static DownloaderImpl recording(File fixtureDir) {
+        return new DownloaderImpl(HttpStack.client(), new ExtractorFixtures(fixtureDir), false);
+    }
+
+    /**
+     * Offline downloader that answers only from fixtures recorded by {@link #recording(File)}
+     * and fails any request that was not recorded. Used by the extraction benchmark.
+     */
+    static DownloaderImpl replaying(File fixtureDir) {
+        return new DownloaderImpl(HttpStack.client(), new ExtractorFixtures(fixtureDir), true);
+    }
+
+    @Nullable
+    ExtractorFixtures fixtures() {
+        return fixtures;
     }
 
     /**
@@ -71,6 +100,9 @@ public class DownloaderImpl extends Downloader {
     private Response makeRequest(Request request) throws IOException {
         final String method = normalizeHttpMethod(request.httpMethod());
         Log.d(TAG, "Extractor request: method=" + method + " url=" + request.url());
+        if (replayOnly && fixtures != null) {
+            return fixtures.replay(method, request.url(), request.dataToSend());
+        }
 
         okhttp3.Request.Builder builder = new okhttp3.Request.Builder()
                 .url(request.url());
@@ -87,33 +119,8 @@ public class DownloaderImpl extends Downloader {
             }
         }
 
-        // 2. Add fallback UA only when caller did not provide one (case-insensitive)
-        if (!hasHeaderIgnoreCase(headers, "User-Agent")) {
-            builder.header("User-Agent", FALLBACK_USER_AGENT);
-        }
-        if (!hasHeaderIgnoreCase(headers, "Referer")) {
-            builder.header("Referer", "https://www.youtube.com/");
-        }
-        if (!hasHeaderIgnoreCase(headers, "Origin")) {
-            builder.header("Origin", "https://www.youtube.com");
-        }
-        if (!hasHeaderIgnoreCase(headers, "Accept-Language")) {
-            builder.header("Accept-Language", "en-US,en;q=0.9");
-        }
-        if (!hasHeaderIgnoreCase(headers, "Sec-Fetch-Dest")) {
-            builder.header("Sec-Fetch-Dest", "empty");
-        }
-        if (!hasHeaderIgnoreCase(headers, "Sec-Fetch-Mode")) {
-            builder.header("Sec-Fetch-Mode", "cors");
-        }
-        if (!hasHeaderIgnoreCase(headers, "Sec-Fetch-Site")) {
-            builder.header("Sec-Fetch-Site", "same-origin");
-        }
-
-        String cookieHeader = resolveYouTubeCookies(request.url());
-        if (!cookieHeader.isEmpty() && !hasHeaderIgnoreCase(headers, "Cookie")) {
-            builder.header("Cookie", cookieHeader);
-        }
+        // 2. User-Agent, Referer, Sec-Fetch-* and cookies the extractor did not set are
+        // filled in by HttpStack.DefaultHeaders.
 
         // 3. Attach request body if extractor supplied one
         byte[] dataToSend = request.dataToSend();
@@ -131,13 +138,20 @@ public class DownloaderImpl extends Downloader {
         }
         builder.method(method, requestBody);
 
-        try (okhttp3.Response response = HTTP_CLIENT.newCall(builder.build()).execute()) {
+        // Register with the extraction's cancellation scope so a superseded resolve
+        // aborts the in-flight call instead of waiting for it to finish.
+        okhttp3.Call call = httpClient.newCall(builder.build());
+        CancellationScope scope = CancellationScope.current();
+        if (scope != null) scope.register(call);
+        try (okhttp3.Response response = call.execute()) {
             // 4. Collect response metadata
             int code = response.code();
             String message = response.message();
             String finalUrl = response.request().url().toString();
             Log.d(TAG, "Extractor response: method=" + method
                     + " code=" + code
+                    + " cached=" + (response.networkResponse() == null
+                            ? "hit" : response.cacheResponse() != null ? "revalidated" : "miss")
                     + " finalUrl=" + finalUrl);
 
             // 5. Read response body as string (expected by extractor Response contract)
@@ -155,7 +169,13 @@ public class DownloaderImpl extends Downloader {
 
             // 7. Build Response using 5-args constructor:
             // (int code, String message, Map headers, String body, String latestUrl)
-            return new Response(code, message, responseHeaders, body, finalUrl);
+            Response result = new Response(code, message, responseHeaders, body, finalUrl);
+            if (fixtures != null) {
+                fixtures.record(method, request.url(), request.dataToSend(), result);
+            }
+            return result;
+        } finally {
+            if (scope != null) scope.unregister(call);
         }
     }
 
@@ -166,16 +186,6 @@ public class DownloaderImpl extends Downloader {
         return method.trim().toUpperCase(Locale.US);
     }
 
-    private static boolean hasHeaderIgnoreCase(Map<String, List<String>> headers, String target) {
-        if (headers == null || target == null) return false;
-        for (String key : headers.keySet()) {
-            if (key != null && key.equalsIgnoreCase(target)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     private static boolean permitsRequestBody(String method) {
         return !("GET".equals(method) || "HEAD".equals(method));
     }
@@ -187,28 +197,4 @@ public class DownloaderImpl extends Downloader {
                 || "PROPPATCH".equals(method)
                 || "REPORT".equals(method);
     }
-
-    private static String resolveYouTubeCookies(String requestUrl) {
-        if (requestUrl == null || requestUrl.trim().isEmpty()) return "";
-        try {
-            CookieManager cookieManager = CookieManager.getInstance();
-            if (cookieManager == null) return "";
-
-            String cookies = cookieManager.getCookie(requestUrl);
-            if (cookies != null && !cookies.trim().isEmpty()) {
-                return cookies;
-            }
-
-            // googlevideo URLs can still require youtube cookies.
-            if (requestUrl.contains("googlevideo.com")) {
-                String ytCookies = cookieManager.getCookie("https://www.youtube.com/");
-                if (ytCookies != null && !ytCookies.trim().isEmpty()) {
-                    return ytCookies;
-                }
-            }
-        } catch (Throwable cookieError) {
-            Log.w(TAG, "Unable to resolve cookies for extractor request", cookieError);
-        }
-        return "";
-    }
 }
@@ -0,0 +1,75 @@
+package com.sansoft.harmonystram;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+
+/**
+ * Decides which extractor responses go into the downloader's disk cache, and for how long.
+ *
+ * <p>YouTube serves most of these with {@code no-cache} or short lifetimes, so the network
+ * interceptor rewrites {@code Cache-Control} for the endpoints listed here. ETag and
+ * Last-Modified validators are kept, so once the lifetime runs out OkHttp revalidates with
+ * a conditional request instead of downloading the body again. Everything else, notably
+ * the per-video InnerTube player and watch-page requests, is never cached.
+ */
+final class ExtractorCachePolicy {
+
+    static final long NOT_CACHEABLE = -1L;
+
+    // Player scripts live under a per-version hash path, so a URL never changes content.
+    static final long PLAYER_SCRIPT_MAX_AGE_SECONDS = 7L * 24L * 60L * 60L;
+    // Service worker script: only used to sniff the current client version.
+    static final long SERVICE_WORKER_MAX_AGE_SECONDS = 24L * 60L * 60L;
+    // Bootstrap pages that point at the current player version.
+    static final long PLAYER_BOOTSTRAP_MAX_AGE_SECONDS = 60L * 60L;
+
+    private ExtractorCachePolicy() {
+    }
+
+    /**
+     * Cache lifetime for a request, or {@link #NOT_CACHEABLE}.
+     */
+    static long maxAgeSeconds(@NonNull String method, @NonNull HttpUrl url) {
+        if (!"GET".equals(method)) return NOT_CACHEABLE;
+        String host = url.host();
+        if (!"www.youtube.com".equals(host) && !"m.youtube.com".equals(host)
+                && !"music.youtube.com".equals(host)) {
+            return NOT_CACHEABLE;
+        }
+        String path = url.encodedPath();
+        if (path.startsWith("/s/player/") && path.endsWith(".js")) {
+            return PLAYER_SCRIPT_MAX_AGE_SECONDS;
+        }
+        if ("/sw.js".equals(path)) {
+            return SERVICE_WORKER_MAX_AGE_SECONDS;
+        }
+        if ("/iframe_api".equals(path) || path.startsWith("/embed/")) {
+            return PLAYER_BOOTSTRAP_MAX_AGE_SECONDS;
+        }
+        return NOT_CACHEABLE;
+    }
+
+    /**
+     * Network interceptor that applies {@link #maxAgeSeconds} to successful responses.
+     */
+    static final class NetworkInterceptor implements okhttp3.Interceptor {
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Response response = chain.proceed(chain.request());
+            long maxAge = maxAgeSeconds(chain.request().method(), chain.request().url());
+            if (maxAge == NOT_CACHEABLE) return response;
+            // 304s too: OkHttp merges their headers into the stored entry on revalidation.
+            if (response.code() != 200 && response.code() != 304) return response;
+            return response.newBuilder()
+                    .removeHeader("Pragma")
+                    .removeHeader("Expires")
+                    .header("Cache-Control", "public, max-age=" + maxAge)
+                    .build();
+        }
+    }
+}
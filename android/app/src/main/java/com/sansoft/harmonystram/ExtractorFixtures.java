@@ -0,0 +1,174 @@
+package com.sansoft.harmonystram;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.extractor.downloader.Response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk set of recorded extractor request/response pairs, used by
+ * {@link DownloaderImpl#recording(File)} and {@link DownloaderImpl#replaying(File)}.
+ *
+ * <p>One file per request, named by a hash of the normalized method, URL and body.
+ * Normalization strips the per-request nonces NewPipe adds ({@code cpn}, {@code t}, ...),
+ * so a replay matches the recording even though those values differ on every run.
+ */
+final class ExtractorFixtures {
+
+    private static final int FILE_FORMAT_VERSION = 1;
+    private static final String FILE_SUFFIX = ".fixture";
+
+    private static final Pattern VOLATILE_QUERY_PARAM =
+            Pattern.compile("([?&])(cpn|t|rn|alr)=[^&]*");
+    private static final Pattern VOLATILE_BODY_FIELD =
+            Pattern.compile("\"(cpn|contentPlaybackNonce)\"\\s*:\\s*\"[^\"]*\"");
+
+    private final File dir;
+    private final AtomicLong servedRequests = new AtomicLong();
+    private final AtomicLong servedNanos = new AtomicLong();
+
+    ExtractorFixtures(@NonNull File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Number of responses served by {@link #replay} and the time spent doing so, so a
+     * benchmark can separate fixture I/O from extractor parsing.
+     */
+    long servedRequests() {
+        return servedRequests.get();
+    }
+
+    long servedNanos() {
+        return servedNanos.get();
+    }
+
+    void resetStats() {
+        servedRequests.set(0L);
+        servedNanos.set(0L);
+    }
+
+    @NonNull
+    Response replay(@NonNull String method, @NonNull String url, @Nullable byte[] body) throws IOException {
+        long startedAt = System.nanoTime();
+        File file = fileFor(method, url, body);
+        if (!file.isFile()) {
+            throw new IOException("No recorded fixture for " + method + " " + url);
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_FORMAT_VERSION) {
+                throw new IOException("Unsupported fixture format: " + file.getName());
+            }
+            in.readUTF(); // normalized key, kept for humans diffing fixture sets
+            int code = in.readInt();
+            String message = in.readUTF();
+            String latestUrl = in.readUTF();
+            int headerCount = in.readInt();
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            for (int i = 0; i < headerCount; i++) {
+                String name = in.readUTF();
+                int valueCount = in.readInt();
+                List<String> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; j++) values.add(in.readUTF());
+                headers.put(name, values);
+            }
+            byte[] responseBody = new byte[in.readInt()];
+            in.readFully(responseBody);
+            return new Response(code, message, headers,
+                    new String(responseBody, StandardCharsets.UTF_8), latestUrl);
+        } finally {
+            servedRequests.incrementAndGet();
+            servedNanos.addAndGet(System.nanoTime() - startedAt);
+        }
+    }
+
+    void record(@NonNull String method, @NonNull String url, @Nullable byte[] body,
+                @NonNull Response response) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create fixture directory " + dir);
+        }
+        File file = fileFor(method, url, body);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeUTF(truncate(normalizedKey(method, url, body)));
+            out.writeInt(response.responseCode());
+            out.writeUTF(nonNull(response.responseMessage()));
+            out.writeUTF(nonNull(response.latestUrl()));
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            if (response.responseHeaders() != null) headers.putAll(response.responseHeaders());
+            // Fixture sets get shared; never persist session cookies.
+            headers.remove("Set-Cookie");
+            headers.remove("set-cookie");
+            out.writeInt(headers.size());
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                out.writeUTF(nonNull(header.getKey()));
+                List<String> values = header.getValue() == null ? new ArrayList<>() : header.getValue();
+                out.writeInt(values.size());
+                for (String value : values) out.writeUTF(nonNull(value));
+            }
+            byte[] responseBody = nonNull(response.responseBody()).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(responseBody.length);
+            out.write(responseBody);
+        }
+        if (!tmp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw new IOException("Cannot write fixture " + file.getName());
+        }
+    }
+
+    private File fileFor(String method, String url, @Nullable byte[] body) {
+        return new File(dir, sha1(normalizedKey(method, url, body)) + FILE_SUFFIX);
+    }
+
+    static String normalizedKey(@NonNull String method, @NonNull String url, @Nullable byte[] body) {
+        String normalizedUrl = VOLATILE_QUERY_PARAM.matcher(url).replaceAll("$1");
+        StringBuilder key = new StringBuilder(method).append(' ').append(normalizedUrl);
+        if (body != null && body.length > 0) {
+            String text = new String(body, StandardCharsets.UTF_8);
+            key.append('\n').append(VOLATILE_BODY_FIELD.matcher(text).replaceAll("\"$1\":\"\""));
+        }
+        return key.toString();
+    }
+
+    private static String sha1(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String truncate(String value) {
+        // writeUTF is limited to 64 KB; the key is informational only.
+        return value.length() > 8_000 ? value.substring(0, 8_000) : value;
+    }
+
+    private static String nonNull(@Nullable String value) {
+        return value == null ? "" : value;
+    }
+}
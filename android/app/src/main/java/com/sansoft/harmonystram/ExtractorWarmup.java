@@ -0,0 +1,106 @@
+package com.sansoft.harmonystram;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.schabi.newpipe.extractor.NewPipe;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves the one-off costs of the first extraction off the first tap: NewPipe bootstrap,
+ * DNS and TLS handshakes to the extractor hosts, and fetching the player script.
+ *
+ * <p>Runs at most once per process on the given executor, the resolver's
+ * {@link ResolverScheduler.Priority#BACKGROUND} lane in the service, and only when the
+ * {@code EXTRACTOR_WARMUP_ENABLED} build flag is set. Every step is best effort.
+ */
+final class ExtractorWarmup {
+
+    private static final String TAG = "ExtractorWarmup";
+
+    private static final String[] PRECONNECT_URLS = {
+            "https://www.youtube.com/",
+            "https://youtubei.googleapis.com/",
+    };
+
+    // Any public video works; the player script and client version are not per-video.
+    private static final String PRIMING_VIDEO_ID = "dQw4w9WgXcQ";
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+    private ExtractorWarmup() {
+    }
+
+    /**
+     * Installs the app downloader into NewPipe once. Safe to call from any thread.
+     */
+    static synchronized void ensureExtractorInitialized(@NonNull Context context) {
+        if (NewPipe.getDownloader() == null) {
+            NewPipe.init(DownloaderImpl.create(context.getApplicationContext()));
+        }
+    }
+
+    static void start(@NonNull Context context, @NonNull Executor executor) {
+        if (!BuildConfig.EXTRACTOR_WARMUP_ENABLED) return;
+        if (!STARTED.compareAndSet(false, true)) return;
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> run(appContext));
+    }
+
+    private static void run(Context context) {
+        long startedAtMs = System.currentTimeMillis();
+        try {
+            ensureExtractorInitialized(context);
+        } catch (Throwable t) {
+            Log.w(TAG, "Extractor init failed during warm-up", t);
+            return;
+        }
+        for (String url : PRECONNECT_URLS) {
+            HttpStack.preconnect(url);
+        }
+        primePlayerScript();
+        Log.d(TAG, "Extractor warm-up finished in " + (System.currentTimeMillis() - startedAtMs) + "ms");
+    }
+
+    /**
+     * Loads the client version and the player script into NewPipe's static caches. The
+     * helpers moved between extractor releases, so they are looked up reflectively, like
+     * {@code getHlsUrl} in {@link YouTubeStreamExtractor}.
+     */
+    private static void primePlayerScript() {
+        invokeStatic("org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper",
+                "getClientVersion");
+        boolean primed = invokeStatic(
+                "org.schabi.newpipe.extractor.services.youtube.YoutubeJavaScriptPlayerManager",
+                "getSignatureTimestamp", PRIMING_VIDEO_ID);
+        if (!primed) {
+            primed = invokeStatic(
+                    "org.schabi.newpipe.extractor.services.youtube.YoutubeJavaScriptExtractor",
+                    "extractJavaScriptCode", PRIMING_VIDEO_ID);
+        }
+        if (!primed) {
+            invokeStatic("org.schabi.newpipe.extractor.services.youtube.YoutubeJavaScriptExtractor",
+                    "extractJavaScriptCode");
+        }
+    }
+
+    private static boolean invokeStatic(String className, String methodName, Object... args) {
+        try {
+            Class<?>[] types = new Class<?>[args.length];
+            for (int i = 0; i < args.length; i++) types[i] = args[i].getClass();
+            Method method = Class.forName(className).getMethod(methodName, types);
+            method.invoke(null, args);
+            return true;
+        } catch (NoSuchMethodException | ClassNotFoundException missing) {
+            return false;
+        } catch (Throwable t) {
+            Log.w(TAG, "Warm-up step " + methodName + " failed", t);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.sansoft.harmonystram;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionSpec;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.TlsVersion;
+
+/**
+ * The one OkHttp stack shared by the extractor, the player data source and artwork.
+ *
+ * <p>Every client handed out is derived from {@link #client()} with
+ * {@link OkHttpClient#newBuilder()}, so they share one connection pool, dispatcher and
+ * TLS session cache: a host handshaked by the extractor is reused by the player and vice
+ * versa. {@link DefaultHeaders} adds the YouTube headers and WebView cookies each caller
+ * used to set by hand, without overriding anything a request already carries; it only
+ * touches YouTube hosts, and the artwork client does not install it at all.
+ */
+final class HttpStack {
+
+    private static final String TAG = "HttpStack";
+
+    static final String YT_REFERER = "https://www.youtube.com/";
+    static final String YT_ORIGIN = "https://www.youtube.com";
+
+    private static final int ARTWORK_TIMEOUT_MS = 8_000;
+
+    // Pool, dispatcher and TLS settings only; never handed out directly.
+    private static final OkHttpClient BASE = new OkHttpClient.Builder()
+            .followRedirects(true)
+            .followSslRedirects(true)
+            .retryOnConnectionFailure(true)
+            .connectTimeout(20, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .writeTimeout(30, TimeUnit.SECONDS)
+            .connectionSpecs(Arrays.asList(
+                    new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS)
+                            .tlsVersions(TlsVersion.TLS_1_3, TlsVersion.TLS_1_2)
+                            .build(),
+                    new ConnectionSpec.Builder(ConnectionSpec.COMPATIBLE_TLS)
+                            .tlsVersions(TlsVersion.TLS_1_2, TlsVersion.TLS_1_1, TlsVersion.TLS_1_0)
+                            .build(),
+                    ConnectionSpec.CLEARTEXT))
+            .build();
+
+    private static final OkHttpClient CLIENT = BASE.newBuilder()
+            .addInterceptor(new DefaultHeaders())
+            .build();
+
+    // Artwork may come from any host, so it goes out without YouTube headers or cookies.
+    private static final OkHttpClient ARTWORK_CLIENT = BASE.newBuilder()
+            .callTimeout(ARTWORK_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    private HttpStack() {
+    }
+
+    /**
+     * The shared base client. Derive from it with {@code newBuilder()} to change timeouts
+     * or add interceptors; never build a client from scratch.
+     */
+    @NonNull
+    static OkHttpClient client() {
+        return CLIENT;
+    }
+
+    /**
+     * Opens a pooled connection to {@code url}'s host so the first real request skips DNS
+     * and the TLS handshake. Best effort; failures are only logged.
+     */
+    static void preconnect(@NonNull String url) {
+        Request request = new Request.Builder().url(url).head().build();
+        try (Response ignored = CLIENT.newCall(request).execute()) {
+            Log.d(TAG, "Preconnected to " + request.url().host());
+        } catch (IOException e) {
+            Log.w(TAG, "Preconnect failed for " + request.url().host(), e);
+        }
+    }
+
+    /**
+     * Downloads and decodes an image on the calling thread; null on any failure.
+     */
+    @Nullable
+    static Bitmap fetchBitmap(@Nullable String url) {
+        if (url == null || url.trim().isEmpty()) return null;
+        try {
+            Request request = new Request.Builder().url(url.trim()).build();
+            try (Response response = ARTWORK_CLIENT.newCall(request).execute()) {
+                ResponseBody body = response.body();
+                if (!response.isSuccessful() || body == null) return null;
+                try (InputStream stream = body.byteStream()) {
+                    return BitmapFactory.decodeStream(stream);
+                }
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Artwork fetch failed for " + url, t);
+            return null;
+        }
+    }
+
+    /**
+     * Fills in the headers YouTube and googlevideo expect, plus the WebView cookies for
+     * the request's host, unless the request already sets them. Requests to any other
+     * host pass through untouched.
+     */
+    static final class DefaultHeaders implements Interceptor {
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Request request = chain.request();
+            Request.Builder builder = request.newBuilder();
+            String host = request.url().host().toLowerCase(Locale.US);
+            if (!isYouTubeHost(host)) return chain.proceed(request);
+            boolean sameOrigin = host.equals("youtube.com") || host.endsWith(".youtube.com");
+
+            setIfAbsent(request, builder, "User-Agent", YouTubeStreamExtractor.EXTRACTOR_USER_AGENT);
+            setIfAbsent(request, builder, "Referer", YT_REFERER);
+            setIfAbsent(request, builder, "Origin", YT_ORIGIN);
+            setIfAbsent(request, builder, "Accept-Language", "en-US,en;q=0.9");
+            setIfAbsent(request, builder, "Sec-Fetch-Dest", "empty");
+            setIfAbsent(request, builder, "Sec-Fetch-Mode", "cors");
+            setIfAbsent(request, builder, "Sec-Fetch-Site", sameOrigin ? "same-origin" : "cross-site");
+            if (request.header("Cookie") == null) {
+                String cookies = CookieSnapshot.headerFor(request.url().toString());
+                if (!cookies.isEmpty()) builder.header("Cookie", cookies);
+            }
+            return chain.proceed(builder.build());
+        }
+
+        // googleapis.com carries InnerTube (youtubei.googleapis.com) for the extractor.
+        static boolean isYouTubeHost(@NonNull String host) {
+            return isDomainOrSubdomain(host, "youtube.com")
+                    || isDomainOrSubdomain(host, "googleapis.com")
+                    || isDomainOrSubdomain(host, "googlevideo.com")
+                    || isDomainOrSubdomain(host, "ytimg.com");
+        }
+
+        private static boolean isDomainOrSubdomain(String host, String domain) {
+            return host.equals(domain) || host.endsWith("." + domain);
+        }
+
+        private static void setIfAbsent(Request request, Request.Builder builder, String name, String value) {
+            // OkHttp header lookups are case-insensitive.
+            if (request.header(name) == null) builder.header(name, value);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.sansoft.harmonystram;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.database.StandaloneDatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import java.io.File;
+
+/**
+ * Process-wide on-disk cache for played media, bounded by {@code MEDIA_CACHE_MAX_MB} and
+ * evicted least-recently-used.
+ *
+ * <p>googlevideo URLs are re-signed on every resolve, so entries are keyed by
+ * {@link #cacheKeyFor(String, String)} (videoId plus itag) instead of the URL; a repeat
+ * play or a seek back into audio already heard is then served from disk.
+ */
+final class MediaCache {
+
+    private static final String TAG = "MediaCache";
+    private static final String CACHE_DIR = "media";
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+    // Query parameters that tell apart different files served under one itag.
+    private static final String[] VARIANT_PARAMETERS = {"clen", "xtags"};
+
+    @Nullable private static SimpleCache cache;
+
+    private MediaCache() {
+    }
+
+    /**
+     * Wraps {@code upstream} so reads go through the disk cache. Falls back to plain
+     * {@code upstream} when the cache is disabled or cannot be opened.
+     */
+    @NonNull
+    static DataSource.Factory wrap(@NonNull Context context, @NonNull DataSource.Factory upstream) {
+        SimpleCache simpleCache = obtain(context);
+        if (simpleCache == null) return upstream;
+        return new CacheDataSource.Factory()
+                .setCache(simpleCache)
+                .setUpstreamDataSourceFactory(upstream)
+                .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+    }
+
+    /**
+     * Stable cache key for a stream: {@code videoId:itag}, plus the {@code clen} and
+     * {@code xtags} parameters when present, since audio languages, DRC variants and
+     * re-encodes of one video share an itag. Returns {@code null}, meaning "key by URL",
+     * for streams without an itag such as direct non-YouTube URLs.
+     */
+    @Nullable
+    static String cacheKeyFor(@Nullable String videoId, @Nullable String streamUrl) {
+        if (videoId == null || videoId.trim().isEmpty()) return null;
+        String itag = queryParameter(streamUrl, "itag");
+        if (itag == null || itag.isEmpty()) return null;
+        StringBuilder key = new StringBuilder(videoId.trim()).append(':').append(itag);
+        for (String name : VARIANT_PARAMETERS) {
+            String value = queryParameter(streamUrl, name);
+            if (value != null && !value.isEmpty()) key.append(':').append(name).append('=').append(value);
+        }
+        return key.toString();
+    }
+
+    static synchronized void release() {
+        if (cache == null) return;
+        try {
+            cache.release();
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to release media cache", t);
+        }
+        cache = null;
+    }
+
+    @Nullable
+    private static synchronized SimpleCache obtain(Context context) {
+        if (cache != null) return cache;
+        long maxBytes = BuildConfig.MEDIA_CACHE_MAX_MB * BYTES_PER_MB;
+        if (maxBytes <= 0L) return null;
+        try {
+            Context appContext = context.getApplicationContext();
+            cache = new SimpleCache(
+                    new File(appContext.getCacheDir(), CACHE_DIR),
+                    new LeastRecentlyUsedCacheEvictor(maxBytes),
+                    new StandaloneDatabaseProvider(appContext));
+        } catch (Throwable t) {
+            Log.w(TAG, "Media cache unavailable; streaming without it", t);
+            cache = null;
+        }
+        return cache;
+    }
+
+    @Nullable
+    private static String queryParameter(@Nullable String url, String name) {
+        if (url == null) return null;
+        int query = url.indexOf('?');
+        if (query < 0) return null;
+        String prefix = name + "=";
+        for (String part : url.substring(query + 1).split("&")) {
+            if (part.startsWith(prefix)) return part.substring(prefix.length());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,260 @@
+package com.sansoft.harmonystram;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.regex.Pattern;
+
+/**
+ * Classifies the active network and turns it, plus the user's data saver setting, into
+ * the limits playback works within: audio bitrate, video height, buffering, prefetch depth
+ * and artwork size.
+ *
+ * <p>The class is refreshed from {@link ConnectivityManager} network callbacks. Data saver
+ * is on when the user enabled it through the {@code HarmonyNative} bridge, or when Android's
+ * own Data Saver restricts this app on a metered network.
+ */
+final class NetworkPolicy {
+
+    private static final String TAG = "NetworkPolicy";
+    private static final String PREFS_NAME = "network_policy";
+    private static final String KEY_DATA_SAVER = "data_saver";
+
+    // Extra queue items prefetched on unmetered networks on top of the configured depth.
+    private static final int UNMETERED_EXTRA_PREFETCH = 2;
+    static final int DEFAULT_MAX_VIDEO_HEIGHT = 720;
+    private static final int METERED_MAX_VIDEO_HEIGHT = 480;
+
+    private static final Pattern LARGE_YT_THUMBNAIL =
+            Pattern.compile("/(maxresdefault|sddefault|hqdefault|hq720)\\.jpg");
+    private static final String SMALL_YT_THUMBNAIL = "/mqdefault.jpg";
+
+    enum NetworkClass { UNMETERED, METERED, ROAMING, OFFLINE }
+
+    interface Listener {
+        void onNetworkPolicyChanged(@NonNull NetworkPolicy policy);
+    }
+
+    private final BandwidthEstimator bandwidth;
+
+    private volatile NetworkClass networkClass = NetworkClass.UNMETERED;
+    private volatile boolean dataSaver;
+    @Nullable private ConnectivityManager connectivity;
+    @Nullable private ConnectivityManager.NetworkCallback callback;
+    @Nullable private SharedPreferences preferences;
+
+    NetworkPolicy(@NonNull BandwidthEstimator bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Reads the current network and data saver state and starts tracking changes;
+     * {@code listener} runs on {@code handler}'s thread after every change.
+     */
+    void start(@NonNull Context context, @NonNull final Handler handler, @NonNull final Listener listener) {
+        Context appContext = context.getApplicationContext();
+        preferences = preferences(appContext);
+        connectivity = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        refresh();
+        if (connectivity == null) return;
+
+        callback = new ConnectivityManager.NetworkCallback() {
+            @Override public void onAvailable(@NonNull Network network) { post(); }
+            @Override public void onLost(@NonNull Network network) { post(); }
+            @Override public void onCapabilitiesChanged(@NonNull Network network,
+                                                        @NonNull NetworkCapabilities capabilities) { post(); }
+
+            private void post() {
+                handler.post(() -> {
+                    if (refresh()) listener.onNetworkPolicyChanged(NetworkPolicy.this);
+                });
+            }
+        };
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                connectivity.registerDefaultNetworkCallback(callback);
+            } else {
+                connectivity.registerNetworkCallback(new NetworkRequest.Builder()
+                        .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                        .build(), callback);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Network callback unavailable; policy stays at " + networkClass, e);
+            callback = null;
+        }
+    }
+
+    void stop() {
+        if (connectivity != null && callback != null) {
+            try {
+                connectivity.unregisterNetworkCallback(callback);
+            } catch (RuntimeException ignored) {
+            }
+        }
+        callback = null;
+    }
+
+    /**
+     * Re-reads the network class and data saver state. Returns true when either changed.
+     */
+    boolean refresh() {
+        NetworkClass previousClass = networkClass;
+        boolean previousSaver = dataSaver;
+        networkClass = classify();
+        dataSaver = (preferences != null && preferences.getBoolean(KEY_DATA_SAVER, false))
+                || isSystemDataSaverActive();
+        boolean changed = previousClass != networkClass || previousSaver != dataSaver;
+        if (changed) Log.d(TAG, "Network policy: class=" + networkClass + " dataSaver=" + dataSaver);
+        return changed;
+    }
+
+    @NonNull
+    NetworkClass networkClass() {
+        return networkClass;
+    }
+
+    boolean isDataSaverEnabled() {
+        return dataSaver;
+    }
+
+    /**
+     * Roaming or data saver: spend as few bytes as playback allows.
+     */
+    boolean isConstrained() {
+        return isConstrained(networkClass, dataSaver);
+    }
+
+    /**
+     * How tightly this policy limits streams: higher values allow fewer bytes.
+     */
+    int strictness() {
+        return strictness(networkClass, dataSaver);
+    }
+
+    int prefetchDepth(int baseDepth) {
+        return prefetchDepth(networkClass, dataSaver, baseDepth);
+    }
+
+    /**
+     * Audio bitrate stream selection should aim for: the bandwidth-derived target, capped
+     * by what this network class may spend.
+     */
+    long targetAudioBitrate() {
+        long target = BandwidthEstimator.targetAudioBitrate(bandwidth.estimateBps());
+        return Math.min(target, audioBitrateCap(networkClass, dataSaver));
+    }
+
+    /**
+     * Tallest video-only stream worth pairing into a DASH manifest; 0 keeps video on the
+     * muxed progressive stream.
+     */
+    int maxVideoHeight() {
+        return maxVideoHeight(networkClass, dataSaver);
+    }
+
+    /**
+     * Swaps large i.ytimg.com thumbnails for the 320px variant off unmetered networks.
+     */
+    @Nullable
+    String artworkUrl(@Nullable String url) {
+        if (url == null || (networkClass == NetworkClass.UNMETERED && !dataSaver)) return url;
+        if (!url.contains("ytimg.com/")) return url;
+        return LARGE_YT_THUMBNAIL.matcher(url).replaceFirst(SMALL_YT_THUMBNAIL);
+    }
+
+    // -------------------------------------------------------------------------
+    // Rules
+    // -------------------------------------------------------------------------
+    static boolean isConstrained(NetworkClass networkClass, boolean dataSaver) {
+        return dataSaver || networkClass == NetworkClass.ROAMING;
+    }
+
+    // Offline limits nothing: streams are resolved under whatever network comes back.
+    static int strictness(NetworkClass networkClass, boolean dataSaver) {
+        if (isConstrained(networkClass, dataSaver)) return 2;
+        return networkClass == NetworkClass.METERED ? 1 : 0;
+    }
+
+    static int prefetchDepth(NetworkClass networkClass, boolean dataSaver, int baseDepth) {
+        if (networkClass == NetworkClass.OFFLINE || isConstrained(networkClass, dataSaver)) return 0;
+        if (networkClass == NetworkClass.METERED) return Math.min(baseDepth, 1);
+        return baseDepth + UNMETERED_EXTRA_PREFETCH;
+    }
+
+    static long audioBitrateCap(NetworkClass networkClass, boolean dataSaver) {
+        if (isConstrained(networkClass, dataSaver)) return BandwidthEstimator.MIN_ADEQUATE_AUDIO_BPS;
+        if (networkClass == NetworkClass.METERED) return BandwidthEstimator.DEFAULT_AUDIO_TARGET_BPS;
+        return Long.MAX_VALUE;
+    }
+
+    static int maxVideoHeight(NetworkClass networkClass, boolean dataSaver) {
+        if (isConstrained(networkClass, dataSaver)) return 0;
+        if (networkClass == NetworkClass.METERED) return METERED_MAX_VIDEO_HEIGHT;
+        return DEFAULT_MAX_VIDEO_HEIGHT;
+    }
+
+    // -------------------------------------------------------------------------
+    // User setting
+    // -------------------------------------------------------------------------
+    static boolean isDataSaverPreferred(@NonNull Context context) {
+        return preferences(context).getBoolean(KEY_DATA_SAVER, false);
+    }
+
+    static void setDataSaverPreferred(@NonNull Context context, boolean enabled) {
+        preferences(context).edit().putBoolean(KEY_DATA_SAVER, enabled).apply();
+    }
+
+    private static SharedPreferences preferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    // -------------------------------------------------------------------------
+    // Platform state
+    // -------------------------------------------------------------------------
+    @SuppressWarnings("deprecation") // NetworkInfo is the only roaming signal below API 28.
+    private NetworkClass classify() {
+        if (connectivity == null) return NetworkClass.UNMETERED;
+        try {
+            NetworkInfo info = connectivity.getActiveNetworkInfo();
+            if (info == null || !info.isConnected()) return NetworkClass.OFFLINE;
+            if (isRoaming(info)) return NetworkClass.ROAMING;
+            return connectivity.isActiveNetworkMetered() ? NetworkClass.METERED : NetworkClass.UNMETERED;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to classify network", e);
+            return networkClass;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean isRoaming(NetworkInfo info) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && connectivity != null) {
+            NetworkCapabilities capabilities = connectivity.getNetworkCapabilities(connectivity.getActiveNetwork());
+            if (capabilities != null) {
+                return !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING);
+            }
+        }
+        return info.isRoaming();
+    }
+
+    private boolean isSystemDataSaverActive() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || connectivity == null) return false;
+        try {
+            return connectivity.isActiveNetworkMetered()
+                    && connectivity.getRestrictBackgroundStatus()
+                    == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.sansoft.harmonystram;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only store for the playback queue and liked tracks.
+ *
+ * <p>Every edit appends one CRC-framed record describing only what changed, so the cost of
+ * persisting an edit no longer depends on queue length: inserts, removals and block moves
+ * are each one record. Replacing the whole queue rewrites the file, as does compaction
+ * once appended records outweigh the last rewrite. On load the records are replayed in
+ * order; a torn or corrupt tail from a crash mid-write ends the replay and is dropped.
+ * Writes run on {@code ioExecutor}, which must be serial.
+ */
+final class PlaybackJournal {
+
+    private static final String TAG = "PlaybackJournal";
+    private static final int MAGIC = 0x48534a31; // "HSJ1"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte OP_REPLACE_QUEUE = 1;
+    private static final byte OP_INSERT = 2;
+    private static final byte OP_LIKE = 3;
+    private static final byte OP_UNLIKE = 4;
+    private static final byte OP_REMOVE = 5;
+    private static final byte OP_MOVE = 6;
+
+    // Appended bytes tolerated before a rewrite: this floor, or the size of the last rewrite.
+    static final long COMPACT_MIN_BYTES = 256 * 1024L;
+
+    static final class Contents {
+        final List<QueueItem> queue;
+        final Set<String> liked;
+        // Why replay stopped before the end of the file, or null when it did not.
+        @Nullable final String droppedTail;
+
+        Contents(List<QueueItem> queue, Set<String> liked) {
+            this(queue, liked, null);
+        }
+
+        Contents(List<QueueItem> queue, Set<String> liked, @Nullable String droppedTail) {
+            this.queue = queue;
+            this.liked = liked;
+            this.droppedTail = droppedTail;
+        }
+    }
+
+    private final File file;
+    private final Executor ioExecutor;
+
+    // Mirror of the file's contents; only touched on ioExecutor after load().
+    private final QueueStore queue = new QueueStore();
+    private final Set<String> liked = new LinkedHashSet<>();
+    private long rewrittenBytes;
+    private long appendedBytes;
+    @Nullable private DataOutputStream out;
+
+    PlaybackJournal(@NonNull File file, @NonNull Executor ioExecutor) {
+        this.file = file;
+        this.ioExecutor = ioExecutor;
+    }
+
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Replays the file and returns what it holds, noting in {@link Contents#droppedTail}
+     * when a damaged tail was cut off. Call before the first write, on
+     * {@code ioExecutor} itself so writes queued meanwhile land after the replay.
+     */
+    @NonNull
+    Contents load() {
+        queue.clear();
+        liked.clear();
+        long intactBytes = 0L;
+        String droppedTail = null;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                    throw new IOException("Unknown journal format");
+                }
+                intactBytes = 8L;
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException end) {
+                        break;
+                    }
+                    int crc = in.readInt();
+                    if (length < 0 || length > file.length()) throw new IOException("Bad record length " + length);
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    if (crc != crcOf(payload)) throw new IOException("Record checksum mismatch");
+                    apply(payload);
+                    intactBytes += 8L + length;
+                }
+            } catch (IOException | RuntimeException e) {
+                droppedTail = "replay stopped after " + intactBytes + " bytes: " + e;
+            }
+        }
+        rewrittenBytes = intactBytes;
+        appendedBytes = 0L;
+        QueueStore snapshot = new QueueStore();
+        snapshot.addAll(queue.asList());
+        Contents contents = new Contents(snapshot.asList(), new LinkedHashSet<>(liked), droppedTail);
+        // Drop the damaged tail now so later appends do not land after it.
+        if (droppedTail != null) ioExecutor.execute(this::rewrite);
+        return contents;
+    }
+
+    void replaceQueue(@NonNull List<QueueItem> items) {
+        final QueueStore copy = copyOf(items);
+        ioExecutor.execute(() -> {
+            queue.clear();
+            queue.addAll(copy.asList());
+            rewrite();
+        });
+    }
+
+    /**
+     * Replaces everything at once; used to migrate state stored elsewhere.
+     */
+    void replaceAll(@NonNull List<QueueItem> items, @NonNull Collection<String> likedIds) {
+        final QueueStore copy = copyOf(items);
+        final List<String> likedCopy = new ArrayList<>(likedIds);
+        ioExecutor.execute(() -> {
+            queue.clear();
+            queue.addAll(copy.asList());
+            liked.clear();
+            liked.addAll(likedCopy);
+            rewrite();
+        });
+    }
+
+    void insert(final int index, @NonNull List<QueueItem> items) {
+        if (items.isEmpty()) return;
+        final List<QueueItem> copy = new ArrayList<>(items);
+        ioExecutor.execute(() -> {
+            int at = Math.max(0, Math.min(queue.size(), index));
+            queue.insert(at, copy);
+            append(insertRecord(at, copy));
+        });
+    }
+
+    void remove(final int from, final int count) {
+        if (count <= 0) return;
+        ioExecutor.execute(() -> {
+            if (from < 0 || from + count > queue.size()) {
+                Log.w(TAG, "Journal out of step on remove " + from + "+" + count + "; rewriting");
+                rewrite();
+                return;
+            }
+            queue.remove(from, count);
+            append(rangeRecord(OP_REMOVE, from, count, 0));
+        });
+    }
+
+    /**
+     * Journals {@link QueueStore#move}: {@code to} is a position in the resulting queue.
+     */
+    void move(final int from, final int count, final int to) {
+        if (count <= 0 || from == to) return;
+        ioExecutor.execute(() -> {
+            if (from < 0 || to < 0 || Math.max(from, to) + count > queue.size()) {
+                Log.w(TAG, "Journal out of step on move " + from + "+" + count + "->" + to + "; rewriting");
+                rewrite();
+                return;
+            }
+            queue.move(from, count, to);
+            append(rangeRecord(OP_MOVE, from, count, to));
+        });
+    }
+
+    void setLiked(@NonNull final String id, final boolean isLiked) {
+        ioExecutor.execute(() -> {
+            boolean changed = isLiked ? liked.add(id) : liked.remove(id);
+            if (changed) append(likeRecord(id, isLiked));
+        });
+    }
+
+    void close() {
+        ioExecutor.execute(this::closeStream);
+    }
+
+    // Queue edits are snapshotted on the caller's thread; a queue store copies compactly.
+    private static QueueStore copyOf(List<QueueItem> items) {
+        QueueStore copy = new QueueStore();
+        copy.addAll(items);
+        return copy;
+    }
+
+    // -------------------------------------------------------------------------
+    // Writing (ioExecutor only)
+    // -------------------------------------------------------------------------
+    private void append(byte[] payload) {
+        try {
+            if (out == null) {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+                if (rewrittenBytes == 0L) writeHeader(out);
+            }
+            writeRecord(out, payload);
+            out.flush();
+            appendedBytes += 8L + payload.length;
+        } catch (IOException e) {
+            Log.w(TAG, "Journal append failed; rewriting", e);
+            rewrite();
+            return;
+        }
+        if (appendedBytes > Math.max(COMPACT_MIN_BYTES, rewrittenBytes)) rewrite();
+    }
+
+    private void rewrite() {
+        closeStream();
+        File tmp = new File(file.getPath() + ".tmp");
+        long bytes;
+        try (DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            writeHeader(tmpOut);
+            writeRecord(tmpOut, replaceRecord(queue.asList()));
+            for (String id : liked) writeRecord(tmpOut, likeRecord(id, true));
+            tmpOut.flush();
+            bytes = tmpOut.size();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not rewrite playback journal", e);
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.w(TAG, "Could not replace playback journal");
+            return;
+        }
+        rewrittenBytes = bytes;
+        appendedBytes = 0L;
+    }
+
+    private void closeStream() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+
+    private static void writeHeader(DataOutputStream stream) throws IOException {
+        stream.writeInt(MAGIC);
+        stream.writeInt(FORMAT_VERSION);
+    }
+
+    private static void writeRecord(DataOutputStream stream, byte[] payload) throws IOException {
+        stream.writeInt(payload.length);
+        stream.writeInt(crcOf(payload));
+        stream.write(payload);
+    }
+
+    private static int crcOf(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    // -------------------------------------------------------------------------
+    // Records
+    // -------------------------------------------------------------------------
+    // The builders write to memory only; IOException cannot actually happen.
+    private static byte[] replaceRecord(List<QueueItem> items) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeByte(OP_REPLACE_QUEUE);
+            writeItems(data, items);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] insertRecord(int index, List<QueueItem> items) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeByte(OP_INSERT);
+            data.writeInt(index);
+            writeItems(data, items);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] rangeRecord(byte op, int from, int count, int to) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeByte(op);
+            data.writeInt(from);
+            data.writeInt(count);
+            if (op == OP_MOVE) data.writeInt(to);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] likeRecord(String id, boolean isLiked) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeByte(isLiked ? OP_LIKE : OP_UNLIKE);
+            data.writeUTF(id);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = data.readByte();
+        switch (op) {
+            case OP_REPLACE_QUEUE:
+                queue.clear();
+                queue.addAll(readItems(data));
+                break;
+            case OP_INSERT: {
+                int index = data.readInt();
+                queue.insert(Math.max(0, Math.min(queue.size(), index)), readItems(data));
+                break;
+            }
+            case OP_REMOVE:
+                // Out-of-range edits throw and end the replay like any corrupt record.
+                queue.remove(data.readInt(), data.readInt());
+                break;
+            case OP_MOVE:
+                queue.move(data.readInt(), data.readInt(), data.readInt());
+                break;
+            case OP_LIKE:
+                liked.add(data.readUTF());
+                break;
+            case OP_UNLIKE:
+                liked.remove(data.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown journal op " + op);
+        }
+    }
+
+    private static void writeItems(DataOutputStream data, List<QueueItem> items) throws IOException {
+        data.writeInt(items.size());
+        for (QueueItem item : items) {
+            writeString(data, item.id);
+            writeString(data, item.title);
+            writeString(data, item.artist);
+            writeString(data, item.videoId);
+            writeString(data, item.thumbnailUrl);
+        }
+    }
+
+    private static List<QueueItem> readItems(DataInputStream data) throws IOException {
+        int count = data.readInt();
+        if (count < 0) throw new IOException("Bad item count " + count);
+        List<QueueItem> items = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            items.add(new QueueItem(readString(data), readString(data), readString(data),
+                    readString(data), readString(data)));
+        }
+        return items;
+    }
+
+    private static void writeString(DataOutputStream data, @Nullable String value) throws IOException {
+        data.writeUTF(value == null ? "" : value);
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        return data.readUTF();
+    }
+}
@@ -1,99 +1,97 @@
 package com.sansoft.harmonystram;
 
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
-import android.os.Build;
 import android.os.IBinder;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-final class PlaybackObserver {
+/**
+ * Binds to {@link PlaybackService} and receives its state through the binder's observer
+ * registration instead of system broadcasts, forwarding it to the activity and, when
+ * given one, the {@link PlaybackViewModel}.
+ */
+final class PlaybackObserver implements PlaybackService.StateObserver {
 
     interface Listener {
-        void onPlaybackStateChanged(@NonNull Intent stateIntent);
+        void onPlaybackStateChanged(@NonNull PlaybackState state);
         void onServiceConnected(@NonNull PlaybackService.PlaybackSnapshot snapshot);
-        void onMediaAction(@NonNull Intent mediaIntent);
+        void onMediaAction(@NonNull String action, @NonNull PlaybackState state);
     }
 
     private final Context context;
     private final Listener listener;
+    @Nullable private final PlaybackViewModel viewModel;
 
     private PlaybackService playbackService;
+    private PlaybackService.LocalBinder binder;
     private boolean bound;
+    private boolean uiVisible;
 
-    PlaybackObserver(@NonNull Context context, @NonNull Listener listener) {
+    PlaybackObserver(@NonNull Context context, @NonNull Listener listener,
+                     @Nullable PlaybackViewModel viewModel) {
         this.context = context;
         this.listener = listener;
+        this.viewModel = viewModel;
     }
 
-    private final BroadcastReceiver stateReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context ctx, Intent intent) {
-            if (intent == null) return;
-            if (!PlaybackService.ACTION_STATE_CHANGED.equals(intent.getAction())) return;
-            listener.onPlaybackStateChanged(intent);
-        }
-    };
-
-    private final BroadcastReceiver mediaActionReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context ctx, Intent intent) {
-            if (intent == null) return;
-            if (!PlaybackService.ACTION_MEDIA_CONTROL.equals(intent.getAction())) return;
-            String action = intent.getStringExtra("action");
-            if (action != null && !action.isEmpty()) {
-                listener.onMediaAction(intent);
-            }
-        }
-    };
-
     private final ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
             if (!(service instanceof PlaybackService.LocalBinder)) return;
-            playbackService = ((PlaybackService.LocalBinder) service).getService();
-            bound = true;
-            listener.onServiceConnected(playbackService.getCurrentSnapshot());
+            binder = (PlaybackService.LocalBinder) service;
+            playbackService = binder.getService();
+            playbackService.setUiVisible(uiVisible);
+            PlaybackService.PlaybackSnapshot snapshot = playbackService.getCurrentSnapshot();
+            if (viewModel != null) viewModel.setSnapshot(snapshot);
+            listener.onServiceConnected(snapshot);
+            binder.addStateObserver(PlaybackObserver.this);
         }
 
         @Override
         public void onServiceDisconnected(ComponentName name) {
-            bound = false;
+            binder = null;
             playbackService = null;
         }
     };
 
     void start() {
-        IntentFilter stateFilter = new IntentFilter(PlaybackService.ACTION_STATE_CHANGED);
-        IntentFilter mediaFilter = new IntentFilter(PlaybackService.ACTION_MEDIA_CONTROL);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            context.registerReceiver(stateReceiver, stateFilter, Context.RECEIVER_NOT_EXPORTED);
-            context.registerReceiver(mediaActionReceiver, mediaFilter, Context.RECEIVER_NOT_EXPORTED);
-        } else {
-            context.registerReceiver(stateReceiver, stateFilter);
-            context.registerReceiver(mediaActionReceiver, mediaFilter);
-        }
+        bound = context.bindService(new Intent(context, PlaybackService.class), serviceConnection,
+                Context.BIND_AUTO_CREATE);
+    }
 
-        context.bindService(new Intent(context, PlaybackService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+    /**
+     * Forwards the activity's visibility to the service, now or once it is bound.
+     */
+    void setUiVisible(boolean visible) {
+        uiVisible = visible;
+        if (playbackService != null) playbackService.setUiVisible(visible);
     }
 
     void stop() {
-        try {
-            context.unregisterReceiver(stateReceiver);
-        } catch (Exception ignored) {
-        }
-        try {
-            context.unregisterReceiver(mediaActionReceiver);
-        } catch (Exception ignored) {
-        }
+        if (binder != null) binder.removeStateObserver(this);
+        if (playbackService != null) playbackService.setUiVisible(false);
         if (bound) {
             context.unbindService(serviceConnection);
             bound = false;
         }
+        binder = null;
         playbackService = null;
     }
+
+    @Override
+    public void onPlaybackStateChanged(@NonNull PlaybackState state) {
+        if (viewModel != null) viewModel.update(state);
+        listener.onPlaybackStateChanged(state);
+    }
+
+    @Override
+    public void onMediaAction(@NonNull String action, @NonNull PlaybackState state) {
+        if (action.isEmpty()) return;
+        if (viewModel != null) viewModel.update(state);
+        listener.onMediaAction(action, state);
+    }
 }
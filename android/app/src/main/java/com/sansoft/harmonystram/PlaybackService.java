@@ -11,7 +11,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -21,11 +20,12 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
-import android.webkit.CookieManager;
 import android.webkit.WebView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
@@ -48,23 +48,20 @@ import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.audio.AudioAttributes;
 import com.google.android.exoplayer2.ext.mediasession.MediaSessionConnector;
 import com.google.android.exoplayer2.ext.mediasession.TimelineQueueNavigator;
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSource;
 import com.google.android.exoplayer2.source.MediaSource;
-import com.google.android.exoplayer2.source.ProgressiveMediaSource;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.schabi.newpipe.extractor.NewPipe;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
+import java.io.File;
 import java.net.URI;
-import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -74,10 +71,20 @@ public class PlaybackService extends Service {
     private static final String PLAYER_DEBUG_TAG = "PLAYER_DEBUG";
     private static final int STREAM_RESOLVE_MAX_ATTEMPTS = 2;
     private static final long RESOLVED_STREAM_REUSE_WINDOW_MS = 5 * 60 * 1000L;
-    private static final int MAX_CONSECUTIVE_PLAYER_ERRORS = 2;
+    // Recovery ladder budgets per track: same-URL retries (per source), failovers to the
+    // next ranked candidate, and fresh extractions.
+    private static final int PLAYER_RETRY_BUDGET = 2;
+    private static final int PLAYER_FAILOVER_BUDGET = 3;
+    private static final int PLAYER_REEXTRACT_BUDGET = 2;
     private static final long DEBUG_TOAST_DEBOUNCE_MS = 1500L;
-    private static final String YT_REFERER = "https://www.youtube.com/";
-    private static final String YT_ORIGIN = "https://www.youtube.com";
+    private static final long PROGRESS_TICK_MS = 1000L;
+    // Position drift a mode switch tolerates before seeking the native player.
+    private static final long IN_PLACE_SEEK_TOLERANCE_MS = 1500L;
+    // Position alone reaches the UI broadcast and web progress once per tick, and disk
+    // every PERSIST_POSITION_INTERVAL_MS; any other change goes out on the next loop turn.
+    private static final long STATE_PROGRESS_INTERVAL_MS = 1000L;
+    private static final long PERSIST_POSITION_INTERVAL_MS = 10_000L;
+    private static final int WIDGET_FIELDS = PlaybackState.FIELDS_METADATA | PlaybackState.FIELD_PLAYING;
     private static final String DEMO_TITLE = "HarmonyStream Demo Track";
     private static final String DEMO_ARTIST = "Built-in fallback";
     private static final String DEMO_VIDEO_ID = "harmony_demo_track";
@@ -102,13 +109,13 @@ public class PlaybackService extends Service {
     public static final String ACTION_SET_QUEUE                  = "com.sansoft.harmonystram.SET_QUEUE";
     public static final String ACTION_SET_INDEX                  = "com.sansoft.harmonystram.SET_INDEX";
     public static final String ACTION_ADD_TO_QUEUE               = "com.sansoft.harmonystram.ADD_TO_QUEUE";
-    public static final String ACTION_MEDIA_CONTROL              = "com.sansoft.harmonystram.MEDIA_CONTROL";
     public static final String ACTION_GET_STATE                  = "com.sansoft.harmonystram.GET_STATE";
     public static final String ACTION_STATE_CHANGED              = "com.sansoft.harmonystram.STATE_CHANGED";
     public static final String ACTION_CLEAR_PENDING_MEDIA_ACTION = "com.sansoft.harmonystram.CLEAR_PENDING_MEDIA_ACTION";
     public static final String ACTION_SET_MODE                   = "com.sansoft.harmonystram.SET_MODE";
     public static final String ACTION_SEEK_RELATIVE              = "com.sansoft.harmonystram.SEEK_RELATIVE";
     public static final String ACTION_SET_VOLUME                 = "com.sansoft.harmonystram.SET_VOLUME";
+    public static final String ACTION_SET_DATA_SAVER             = "com.sansoft.harmonystram.SET_DATA_SAVER";
     public static final String ACTION_LIKE                       = "com.sansoft.harmonystram.LIKE";
     public static final String ACTION_UNLIKE                     = "com.sansoft.harmonystram.UNLIKE";
     public static final String EXTRA_PENDING_MEDIA_ACTION        = "pending_media_action";
@@ -119,12 +126,16 @@ public class PlaybackService extends Service {
     private static final String KEY_PLAYING       = "playing";
     private static final String KEY_POSITION_MS   = "position_ms";
     private static final String KEY_DURATION_MS   = "duration_ms";
+    // Legacy JSON copies of the queue and likes, migrated into the playback journal.
     private static final String KEY_QUEUE_JSON    = "queue_json";
     private static final String KEY_LIKED_TRACKS  = "liked_tracks";
+    private static final String PLAYBACK_JOURNAL_FILE = "playback_queue.journal";
     private static final String KEY_QUEUE_INDEX   = "queue_index";
+    private static final String KEY_VIDEO_ID      = "video_id";
     private static final String KEY_THUMBNAIL_URL = "thumbnail_url";
     private static final String KEY_DEMO_SEEDED_ON_FIRST_LAUNCH = "demo_seeded_on_first_launch";
     private static final int    MAX_ARTWORK_PX    = 512;
+    private static final String RESOLVED_STREAM_CACHE_FILE = "resolved_streams.bin";
 
     private static volatile WebView linkedWebView;
 
@@ -175,9 +186,25 @@ public class PlaybackService extends Service {
     // -------------------------------------------------------------------------
     private final Handler         mainHandler      = new Handler(Looper.getMainLooper());
     private final IBinder         localBinder      = new LocalBinder();
-    private final ExecutorService resolverExecutor = Executors.newSingleThreadExecutor();
-    private final ExecutorService artworkExecutor  = Executors.newSingleThreadExecutor();
-    private final YouTubeStreamExtractor youTubeStreamExtractor = new YouTubeStreamExtractor();
+    // Bound in-process clients; system broadcasts are left to out-of-process consumers.
+    private final List<StateObserver> stateObservers = new CopyOnWriteArrayList<>();
+    private final ResolverScheduler resolverScheduler = new ResolverScheduler();
+    private final BandwidthEstimator bandwidthEstimator = new BandwidthEstimator();
+    private final StatePublisher statePublisher = new StatePublisher(StatePublisher.on(mainHandler));
+    private final NetworkPolicy networkPolicy = new NetworkPolicy(bandwidthEstimator);
+    private final YouTubeStreamExtractor youTubeStreamExtractor =
+            new YouTubeStreamExtractor(BuildConfig.EXTRACTOR_HEDGE_DELAY_MS, networkPolicy, resolverScheduler);
+    private ResolvedStreamCache resolvedStreamCache;
+    private final ExecutorService journalExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "playback-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private PlaybackJournal playbackJournal;
+    private StreamResolver streamResolver;
+    private QueuePrefetcher queuePrefetcher;
+    @Nullable private ChunkedRangeDataSource.Factory chunkedDataSourceFactory;
+    @Nullable private PlayerMediaSources playerMediaSources;
 
     private final Runnable progressSyncRunnable = new Runnable() {
         @Override
@@ -187,12 +214,10 @@ public class PlaybackService extends Service {
                 long dur = Math.max(0, player.getDuration());
                 currentPositionMs = pos;
                 currentDurationMs = dur;
-                sendProgressToWeb(pos, dur);
-                broadcastState();
-                persistState();
+                publishState();
             }
             if (player != null && player.isPlaying()) {
-                mainHandler.postDelayed(this, 500L);
+                mainHandler.postDelayed(this, PROGRESS_TICK_MS);
             }
         }
     };
@@ -208,20 +233,33 @@ public class PlaybackService extends Service {
     private String                currentResolvedStreamUrl;
     private volatile long         currentResolvedStreamAtMs;
     private volatile long         resolveRequestToken;
-    private int consecutivePlayerErrors;
+    @Nullable private volatile StreamResolver.Ticket activeResolveTicket;
+    private int queueRevision;
+    private final RecoveryLadder recoveryLadder =
+            new RecoveryLadder(PLAYER_RETRY_BUDGET, PLAYER_FAILOVER_BUDGET, PLAYER_REEXTRACT_BUDGET);
     private int pendingQueueIndex = -1;
     @SuppressWarnings("unused")
     private String                videoStreamUrl;
     private boolean               videoMode           = false;
+    // Whether an activity is showing the app; picks the audio buffering profile.
+    private boolean               uiVisible;
+    private final BufferingLoadControl bufferingLoadControl =
+            new BufferingLoadControl(BufferingLoadControl.Profile.AUDIO_BACKGROUND);
     private boolean               progressLoopRunning;
     private volatile long         pendingPlayRequestedAtMs;
     @Nullable private String      lastPlaybackError;
     private String                lastDebugToastMessage;
     private long                  lastDebugToastAtMs;
 
-    private final List<QueueItem> playbackQueue     = new ArrayList<>();
+    private final QueueStore      playbackQueue     = new QueueStore();
     private int                   currentQueueIndex = -1;
     private final java.util.Set<String> likedTrackIds = new java.util.HashSet<>();
+    // False until restoreQueueAsync() has filled playbackQueue and likedTrackIds; commands
+    // that need them wait in pendingQueueCommands.
+    private boolean queueRestored;
+    // Set in onDestroy; main-thread callbacks posted earlier check it before touching state.
+    private boolean destroyed;
+    private final List<Runnable> pendingQueueCommands = new ArrayList<>();
 
     private MediaSessionCompat          mediaSession;
     private MediaSessionConnector       mediaSessionConnector;
@@ -233,26 +271,32 @@ public class PlaybackService extends Service {
     private           int                  artworkRequestVersion = 0;
 
     // -------------------------------------------------------------------------
-    // Binder / QueueItem
+    // Binder
     // -------------------------------------------------------------------------
+    /**
+     * In-process observer of playback state, registered through {@link LocalBinder}.
+     * Always called on the main thread.
+     */
+    interface StateObserver {
+        void onPlaybackStateChanged(@NonNull PlaybackState state);
+        void onMediaAction(@NonNull String action, @NonNull PlaybackState state);
+    }
+
     public class LocalBinder extends Binder {
         PlaybackService getService() { return PlaybackService.this; }
-    }
 
-    private static class QueueItem {
-        final String id;
-        final String title;
-        final String artist;
-        final String videoId;
-        final String thumbnailUrl;
+        /**
+         * Registers {@code observer} and immediately hands it the current state. Call on
+         * the main thread.
+         */
+        void addStateObserver(@NonNull StateObserver observer) {
+            if (stateObservers.contains(observer)) return;
+            stateObservers.add(observer);
+            observer.onPlaybackStateChanged(captureState());
+        }
 
-        QueueItem(String id, String title, String artist,
-                  String videoId, String thumbnailUrl) {
-            this.id           = id;
-            this.title        = title;
-            this.artist       = artist;
-            this.videoId      = videoId;
-            this.thumbnailUrl = thumbnailUrl;
+        void removeStateObserver(@NonNull StateObserver observer) {
+            stateObservers.remove(observer);
         }
     }
 
@@ -263,14 +307,20 @@ public class PlaybackService extends Service {
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
+        bandwidthEstimator.attach(this);
+        networkPolicy.start(this, mainHandler, policy -> onNetworkPolicyChanged());
+        initResolvedStreamCache();
+        playbackJournal = new PlaybackJournal(new File(getFilesDir(), PLAYBACK_JOURNAL_FILE), journalExecutor);
         restoreState();
+        restoreQueueAsync();
         refreshArtworkAsync(currentThumbnailUrl);
         initWakeLock();
         ensureTlsProvider();
         initExtractor();
+        ExtractorWarmup.start(this, resolverScheduler.executor(ResolverScheduler.Priority.BACKGROUND));
         initMediaSession();
         initPlayer();
-        seedDemoTrackWhenEmpty();
+        initStateSubscribers();
     }
 
 
@@ -284,11 +334,25 @@ public class PlaybackService extends Service {
         }
     }
 
+    private void initResolvedStreamCache() {
+        resolvedStreamCache = new ResolvedStreamCache(
+                new File(getCacheDir(), RESOLVED_STREAM_CACHE_FILE),
+                ResolvedStreamCache.DEFAULT_MAX_ENTRIES,
+                resolverScheduler.executor(ResolverScheduler.Priority.BACKGROUND));
+        resolvedStreamCache.setPolicyStrictness(networkPolicy.strictness());
+        // A resolve that races the load just extracts; its fresh entry wins the merge.
+        resolvedStreamCache.loadAsync();
+        streamResolver = new StreamResolver(resolvedStreamCache, youTubeStreamExtractor);
+        queuePrefetcher = new QueuePrefetcher(streamResolver, resolverScheduler,
+                networkPolicy.prefetchDepth(BuildConfig.QUEUE_PREFETCH_DEPTH));
+        queuePrefetcher.setListener((videoId, mode, result) -> mainHandler.post(() -> {
+            if (mode == videoMode) appendUpcomingToPlaylist();
+        }));
+    }
+
     private void initExtractor() {
         try {
-            if (NewPipe.getDownloader() == null) {
-                NewPipe.init(DownloaderImpl.create());
-            }
+            ExtractorWarmup.ensureExtractorInitialized(this);
         } catch (Throwable t) {
             Log.w(TAG, "NewPipe init failed", t);
         }
@@ -309,12 +373,16 @@ public class PlaybackService extends Service {
             @Override public void onPlay()  { if (player != null) player.play(); }
             @Override public void onPause() { if (player != null) player.pause(); }
             @Override public void onSkipToNext() {
-                handleSkip(+1);
-                dispatchActionToUi(ACTION_NEXT);
+                whenQueueRestored(() -> {
+                    handleSkip(+1);
+                    dispatchActionToUi(ACTION_NEXT);
+                });
             }
             @Override public void onSkipToPrevious() {
-                handleSkip(-1);
-                dispatchActionToUi(ACTION_PREVIOUS);
+                whenQueueRestored(() -> {
+                    handleSkip(-1);
+                    dispatchActionToUi(ACTION_PREVIOUS);
+                });
             }
             @Override public void onSeekTo(long pos) {
                 if (player != null) player.seekTo(Math.max(0L, pos));
@@ -326,40 +394,18 @@ public class PlaybackService extends Service {
                 .setActions(ENABLED_PLAYBACK_ACTIONS);
     }
 
-    private ProgressiveMediaSource.Factory buildPlayerMediaSourceFactory() {
-        DefaultHttpDataSource.Factory httpFactory = new DefaultHttpDataSource.Factory()
-                .setUserAgent(YouTubeStreamExtractor.EXTRACTOR_USER_AGENT)
-                .setAllowCrossProtocolRedirects(true)
-                .setConnectTimeoutMs(20_000)
-                .setReadTimeoutMs(20_000);
-
-        Map<String, String> defaultHeaders = new HashMap<>();
-        defaultHeaders.put("Referer", YT_REFERER);
-        defaultHeaders.put("Origin", YT_ORIGIN);
-        defaultHeaders.put("Accept-Language", "en-US,en;q=0.9");
-        defaultHeaders.put("Sec-Fetch-Dest", "empty");
-        defaultHeaders.put("Sec-Fetch-Mode", "cors");
-        defaultHeaders.put("Sec-Fetch-Site", "cross-site");
-
-        String cookieHeader = resolveCookieHeaderForPlayback();
-        if (!cookieHeader.isEmpty()) {
-            defaultHeaders.put("Cookie", cookieHeader);
-        }
-        httpFactory.setDefaultRequestProperties(defaultHeaders);
-
-        return new ProgressiveMediaSource.Factory(httpFactory);
-    }
+    // Built once: the chunker owns the prefetch threads, released in onDestroy.
+    private PlayerMediaSources playerMediaSources() {
+        if (playerMediaSources != null) return playerMediaSources;
+        // Same OkHttp client as the extractor: googlevideo and youtube.com connections
+        // are reused, and HttpStack.DefaultHeaders adds Referer, Origin and cookies.
+        DataSource.Factory httpFactory = new OkHttpDataSource.Factory(HttpStack.client());
 
-    private String resolveCookieHeaderForPlayback() {
-        try {
-            CookieManager cookieManager = CookieManager.getInstance();
-            if (cookieManager == null) return "";
-            String cookies = cookieManager.getCookie(YT_REFERER);
-            return cookies == null ? "" : cookies;
-        } catch (Throwable t) {
-            Log.w(TAG, "Failed to read playback cookies", t);
-            return "";
-        }
+        // Cache in front of the chunker: cached ranges never reach the network.
+        chunkedDataSourceFactory = new ChunkedRangeDataSource.Factory(
+                httpFactory, BuildConfig.MEDIA_CHUNK_SIZE_KB * 1024);
+        playerMediaSources = new PlayerMediaSources(MediaCache.wrap(this, chunkedDataSourceFactory));
+        return playerMediaSources;
     }
 
     private void initPlayer() {
@@ -370,9 +416,13 @@ public class PlaybackService extends Service {
                 .build();
 
         try {
-            player = new ExoPlayer.Builder(this).build();
+            player = new ExoPlayer.Builder(this)
+                    .setLoadControl(bufferingLoadControl)
+                    .setBandwidthMeter(bandwidthEstimator.createMeter(this, mainHandler))
+                    .build();
             player.setAudioAttributes(audioAttrs, true);
             player.setVolume(1.0f);
+            applyVideoTrackSelection();
             debugToast("ExoPlayer initialization success");
         } catch (Throwable initError) {
             debugToast("ExoPlayer initialization failure: " + initError.getMessage());
@@ -399,20 +449,29 @@ public class PlaybackService extends Service {
 
             @Override
             public void onSkipToNext(Player p) {
-                handleSkip(+1);
-                dispatchActionToUi(ACTION_NEXT);
+                whenQueueRestored(() -> {
+                    handleSkip(+1);
+                    dispatchActionToUi(ACTION_NEXT);
+                });
             }
 
             @Override
             public void onSkipToPrevious(Player p) {
-                handleSkip(-1);
-                dispatchActionToUi(ACTION_PREVIOUS);
+                whenQueueRestored(() -> {
+                    handleSkip(-1);
+                    dispatchActionToUi(ACTION_PREVIOUS);
+                });
             }
 
             @Override
             public MediaDescriptionCompat getMediaDescription(Player p, int windowIndex) {
-                if (windowIndex >= 0 && windowIndex < playbackQueue.size()) {
-                    QueueItem item = playbackQueue.get(windowIndex);
+                // Timeline windows are playlist entries, not queue positions.
+                PlaylistEntry entry = windowIndex >= 0 && windowIndex < p.getMediaItemCount()
+                        ? playlistEntryOf(p.getMediaItemAt(windowIndex))
+                        : null;
+                int queueIndex = entry == null ? -1 : queueIndexOf(entry);
+                if (queueIndex >= 0) {
+                    QueueItem item = playbackQueue.get(queueIndex);
                     return new MediaDescriptionCompat.Builder()
                             .setTitle(item.title)
                             .setSubtitle(item.artist)
@@ -428,11 +487,10 @@ public class PlaybackService extends Service {
         player.addListener(new Player.Listener() {
             @Override
             public void onIsPlayingChanged(boolean isPlaying) {
+                recoveryLadder.onPlayingChanged(isPlaying, SystemClock.elapsedRealtime());
                 syncWakeLock(isPlaying);
                 if (isPlaying) startProgressUpdates(); else stopProgressUpdates();
-                updatePlaybackState();
-                updateNotification();
-                broadcastState();
+                publishState();
                 dispatchPlaybackEvent(isPlaying ? "playbackStarted" : "playbackPaused");
             }
 
@@ -442,24 +500,33 @@ public class PlaybackService extends Service {
                     currentDurationMs = Math.max(0, player.getDuration());
                 }
                 if (state == Player.STATE_READY) {
-                    consecutivePlayerErrors = 0;
                     debugToast("Player ready");
                 }
                 if (state == Player.STATE_ENDED) {
                     handleSkip(+1);
                     dispatchActionToUi(ACTION_NEXT);
                 }
-                updatePlaybackState();
-                updateNotification();
-                broadcastState();
+                publishState();
+            }
+
+            @Override
+            public void onMediaItemTransition(@Nullable MediaItem mediaItem, int reason) {
+                // Replacing the playlist (a fresh resolve) is handled by resolveAndPlay.
+                if (reason != Player.MEDIA_ITEM_TRANSITION_REASON_AUTO
+                        && reason != Player.MEDIA_ITEM_TRANSITION_REASON_SEEK) {
+                    return;
+                }
+                PlaylistEntry entry = playlistEntryOf(mediaItem);
+                if (entry != null) {
+                    onPlaylistAdvanced(entry, reason == Player.MEDIA_ITEM_TRANSITION_REASON_AUTO);
+                }
             }
 
             @Override
             public void onPositionDiscontinuity(Player.PositionInfo oldPos,
                                                 Player.PositionInfo newPos,
                                                 int reason) {
-                updatePlaybackState();
-                broadcastState();
+                publishState();
             }
 
             @Override
@@ -480,18 +547,10 @@ public class PlaybackService extends Service {
                         || "ERROR_CODE_IO_BAD_HTTP_STATUS".equals(errorCodeName)
                         || "ERROR_CODE_IO_NETWORK_CONNECTION_FAILED".equals(errorCodeName);
 
-                consecutivePlayerErrors++;
-                if (currentVideoId != null
-                        && !currentVideoId.isEmpty()
-                        && consecutivePlayerErrors <= MAX_CONSECUTIVE_PLAYER_ERRORS) {
-                    long retrySeekMs = isSourceError ? 0L : Math.max(0L, currentPositionMs);
-                    Log.w(TAG, "Attempting recovery after player error for videoId=" + currentVideoId
-                            + " attempt=" + consecutivePlayerErrors
-                            + " seekMs=" + retrySeekMs
-                            + " sourceError=" + isSourceError);
+                if (currentVideoId != null && !currentVideoId.isEmpty() && recoverFromPlayerError(
+                        errorCodeName != null && errorCodeName.startsWith("ERROR_CODE_IO_"), isSourceError)) {
                     lastPlaybackError = null;
-                    broadcastState();
-                    resolveAndPlay(currentVideoId, retrySeekMs);
+                    publishState();
                     return;
                 }
 
@@ -499,7 +558,7 @@ public class PlaybackService extends Service {
                         ? "Playback source error. The stream URL may have expired or been blocked."
                         : "Playback failed";
                 lastPlaybackError = friendly + " Details: " + message;
-                broadcastState();
+                publishState();
 
                 Log.e(TAG, "Aborting auto-retry after repeated player errors for videoId=" + currentVideoId);
                 if (handleSkip(+1)) {
@@ -510,9 +569,7 @@ public class PlaybackService extends Service {
                     if (player != null) {
                         player.stop();
                     }
-                    updatePlaybackState();
-                    updateNotification();
-                    broadcastState();
+                    publishState();
                 }
             }
         });
@@ -529,10 +586,36 @@ public class PlaybackService extends Service {
                 + " queueIndex=" + currentQueueIndex
                 + " videoMode=" + videoMode);
 
+        // Play, pause, seek and the like are served from the restored snapshot right away;
+        // queue edits and navigation wait for the queue itself.
+        if (needsRestoredQueue(intent.getAction())) {
+            whenQueueRestored(() -> handleCommand(intent));
+        } else {
+            handleCommand(intent);
+        }
+        return START_STICKY;
+    }
+
+    private static boolean needsRestoredQueue(String action) {
+        switch (action) {
+            case ACTION_LIKE:
+            case ACTION_UNLIKE:
+            case ACTION_NEXT:
+            case ACTION_PREVIOUS:
+            case ACTION_SET_QUEUE:
+            case ACTION_SET_INDEX:
+            case ACTION_ADD_TO_QUEUE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void handleCommand(Intent intent) {
         switch (intent.getAction()) {
             case ACTION_PLAY:
                 handlePlay(intent);
-                broadcastState();
+                publishState();
                 break;
             case ACTION_UPDATE_STATE:
                 handleUpdateState(intent);
@@ -540,7 +623,7 @@ public class PlaybackService extends Service {
             case ACTION_PAUSE:
                 debugToast("Pause pressed");
                 if (player != null) player.pause();
-                broadcastState();
+                publishState();
                 break;
             case ACTION_PLAY_PAUSE:
                 debugToast((player != null && player.isPlaying())
@@ -549,14 +632,14 @@ public class PlaybackService extends Service {
                 if (player != null) {
                     if (player.isPlaying()) player.pause(); else player.play();
                 }
-                broadcastState();
+                publishState();
                 break;
             case ACTION_SEEK:
                 debugToast("Seek to " + intent.getLongExtra("position_ms", 0L));
                 if (player != null) {
                     player.seekTo(Math.max(0L, intent.getLongExtra("position_ms", 0L)));
                 }
-                broadcastState();
+                publishState();
                 break;
             case ACTION_SEEK_RELATIVE:
                 if (player != null) {
@@ -577,6 +660,10 @@ public class PlaybackService extends Service {
                     player.setVolume(Math.max(0f, Math.min(1.0f, volume)));
                 }
                 break;
+            case ACTION_SET_DATA_SAVER:
+                NetworkPolicy.setDataSaverPreferred(this, intent.getBooleanExtra("enabled", false));
+                if (networkPolicy.refresh()) onNetworkPolicyChanged();
+                break;
             case ACTION_LIKE:
                 handleLike(true);
                 break;
@@ -585,12 +672,12 @@ public class PlaybackService extends Service {
                 break;
             case ACTION_NEXT:
                 handleSkip(+1);
-                broadcastState();
+                publishState();
                 dispatchActionToUi(ACTION_NEXT);
                 break;
             case ACTION_PREVIOUS:
                 handleSkip(-1);
-                broadcastState();
+                publishState();
                 dispatchActionToUi(ACTION_PREVIOUS);
                 break;
             case ACTION_SET_QUEUE:
@@ -606,7 +693,9 @@ public class PlaybackService extends Service {
                 dispatchActionToUi(ACTION_ADD_TO_QUEUE);
                 break;
             case ACTION_GET_STATE:
-                broadcastState();
+                // Bound clients get state on registration; this answers everyone else,
+                // even when nothing changed.
+                sendStateBroadcast(captureState());
                 break;
             case ACTION_CLEAR_PENDING_MEDIA_ACTION:
                 break;
@@ -614,10 +703,7 @@ public class PlaybackService extends Service {
                 break;
         }
 
-        updateNotification();
-        updatePlaybackState();
-        persistState();
-        return START_STICKY;
+        publishState();
     }
 
     // -------------------------------------------------------------------------
@@ -626,29 +712,92 @@ public class PlaybackService extends Service {
     private void switchMode(boolean enableVideo) {
         if (videoMode == enableVideo) return;
         videoMode = enableVideo;
+        updateBufferingProfile();
+        // Appended entries were resolved for the old mode.
+        trimUpcomingPlaylist();
 
         dispatchToLinkedWebView(
             "window.dispatchEvent(new CustomEvent('nativeSetVideoMode',"
             + "{ detail: { enabled: " + enableVideo + " } }));");
 
+        applyVideoTrackSelection();
         if (enableVideo) {
             if (player != null && player.isPlaying()) {
                 player.pause();
             }
         } else if (player != null && currentVideoId != null && !currentVideoId.isEmpty()) {
-            long resumePositionMs = Math.max(0L, player.getCurrentPosition());
-            resolveAndPlay(currentVideoId, resumePositionMs);
+            // Paused for video mode, the WebView's reported position is the newer one.
+            long resumePositionMs = Math.max(0L,
+                    player.isPlaying() ? player.getCurrentPosition() : currentPositionMs);
+            if (!switchToAudioInPlace(resumePositionMs)) {
+                resolveAndPlay(currentVideoId, resumePositionMs);
+            }
         }
 
-        broadcastState();
-        updateNotification();
-        persistState();
+        publishState();
+    }
+
+
+    // The video renderer only runs in video mode; in audio mode a merged DASH source stops
+    // fetching video segments and a muxed stream is demuxed without decoding its frames.
+    private void applyVideoTrackSelection() {
+        if (player == null) return;
+        player.setTrackSelectionParameters(player.getTrackSelectionParameters()
+                .buildUpon()
+                .setTrackTypeDisabled(C.TRACK_TYPE_VIDEO, !videoMode)
+                .build());
+    }
+
+    /**
+     * Moves the current track to audio without another extraction: a merged DASH source
+     * keeps playing with its video track disabled, otherwise an audio-mode result from the
+     * cache or the audio URL stored with the current resolve is swapped in at
+     * {@code positionMs}. Returns false when neither is still valid.
+     */
+    private boolean switchToAudioInPlace(long positionMs) {
+        PlaylistEntry current = playlistEntryOf(player.getCurrentMediaItem());
+        if (current == null || !currentVideoId.equals(current.videoId)) return false;
+        if (current.kind == YouTubeStreamExtractor.StreamKind.DASH && current.audioStreamUrl != null) {
+            Log.d(TAG, "Audio mode on merged source for videoId=" + currentVideoId);
+            if (Math.abs(player.getCurrentPosition() - positionMs) > IN_PLACE_SEEK_TOLERANCE_MS) {
+                player.seekTo(positionMs);
+            }
+            player.play();
+            return true;
+        }
+
+        long nowMs = System.currentTimeMillis();
+        YouTubeStreamExtractor.ExtractionResult audio = resolvedStreamCache.get(currentVideoId, false);
+        if (audio == null && !current.live
+                && ResolvedStreamCache.isStillValid(current.audioStreamUrl, currentResolvedStreamAtMs, nowMs)) {
+            audio = new YouTubeStreamExtractor.ExtractionResult(current.audioStreamUrl,
+                    current.audioStreamUrl, current.videoStreamUrl);
+        }
+        if (audio == null) return false;
+
+        try {
+            player.setMediaSource(buildPlaylistMediaSource(
+                    new PlaylistEntry(current.queueIndex, currentVideoId, audio, false)), positionMs);
+            player.prepare();
+            player.play();
+        } catch (Throwable t) {
+            Log.w(TAG, "In-place audio switch failed; re-resolving videoId=" + currentVideoId, t);
+            return false;
+        }
+        lastPlaybackError = null;
+        currentResolvedStreamUrl = audio.streamUrl;
+        audioStreamUrl = audio.audioStreamUrl;
+        videoStreamUrl = audio.videoStreamUrl;
+        Log.d(TAG, "Switched to audio in place for videoId=" + currentVideoId + " at " + positionMs + "ms");
+        schedulePrefetch();
+        return true;
     }
 
     // -------------------------------------------------------------------------
     // handlePlay
     // -------------------------------------------------------------------------
     private void handlePlay(Intent intent) {
+        recoveryLadder.reset();
         String videoId = intent.getStringExtra("video_id");
         if (videoId == null || videoId.isEmpty()) {
             String restoredVideoId = resolveVideoIdFromQueueIndex();
@@ -698,7 +847,7 @@ public class PlaybackService extends Service {
         resetQueueToSingleSelection(videoId, currentTitle, currentArtist, currentThumbnailUrl);
         pendingPlayRequestedAtMs = System.currentTimeMillis();
         ensureForegroundWithCurrentState();
-        broadcastState();
+        publishState();
         resolveAndPlay(videoId, 0L);
     }
 
@@ -723,23 +872,43 @@ public class PlaybackService extends Service {
             if (shouldPlay  && !player.isPlaying()) player.play();
             if (!shouldPlay && player.isPlaying())  player.pause();
         }
-        if (player == null || !player.isPlaying()) broadcastState();
+        if (player == null || !player.isPlaying()) publishState();
     }
 
     // -------------------------------------------------------------------------
     // Resolve and play selected stream URL in audio or video mode.
     // -------------------------------------------------------------------------
     private void resolveAndPlay(final String videoId, final long seekMs) {
+        resolveAndPlay(videoId, seekMs, ResolverScheduler.Priority.USER_PLAY);
+    }
+
+    private void resolveAndPlay(final String videoId, final long seekMs,
+                                final ResolverScheduler.Priority priority) {
         final long requestToken = ++resolveRequestToken;
-        resolverExecutor.execute(() -> {
+        StreamResolver.Ticket superseded = activeResolveTicket;
+        if (superseded != null) superseded.cancel();
+        resolverScheduler.submit(priority, () -> {
+            // A rapid skip queues several resolves behind the running one; only the
+            // newest is still wanted, so the rest are dropped before any network work.
+            if (requestToken != resolveRequestToken) {
+                Log.d(TAG, "Dropping superseded resolve before start for videoId=" + videoId);
+                return;
+            }
             try {
                 StreamResolution resolution = null;
                 Throwable lastResolveFailure = null;
                 for (int attempt = 1; attempt <= STREAM_RESOLVE_MAX_ATTEMPTS; attempt++) {
+                    if (requestToken != resolveRequestToken) {
+                        Log.d(TAG, "Resolve superseded between attempts for videoId=" + videoId);
+                        return;
+                    }
                     try {
                         initExtractor();
-                        resolution = resolveStreamUrl(videoId, attempt);
+                        resolution = resolveStreamUrl(videoId, attempt, requestToken, priority);
                         break;
+                    } catch (CancellationException cancelled) {
+                        Log.d(TAG, "Resolve superseded for videoId=" + videoId);
+                        return;
                     } catch (Throwable t) {
                         lastResolveFailure = t;
                         Log.w(TAG, "Extractor attempt " + attempt + " failed for videoId=" + videoId, t);
@@ -750,6 +919,7 @@ public class PlaybackService extends Service {
                 }
 
                 final String selected = resolution.streamUrl;
+                final YouTubeStreamExtractor.ExtractionResult extraction = resolution.extraction;
                 audioStreamUrl = resolution.audioStreamUrl;
                 videoStreamUrl = resolution.videoStreamUrl;
 
@@ -773,9 +943,13 @@ public class PlaybackService extends Service {
 
                     try {
                         debugToast("Preparing player");
-                        MediaSource mediaSource = buildPlayerMediaSourceFactory()
-                                .createMediaSource(MediaItem.fromUri(selected));
-                        player.setMediaSource(mediaSource);
+                        int queueIndex = currentQueueIndex >= 0
+                                && currentQueueIndex < playbackQueue.size()
+                                && videoId.equals(playbackQueue.videoIdAt(currentQueueIndex))
+                                ? currentQueueIndex : -1;
+                        // Replaces the whole playlist; schedulePrefetch() appends the next item.
+                        player.setMediaSource(buildPlaylistMediaSource(new PlaylistEntry(
+                                queueIndex, videoId, extraction, videoMode)));
                         player.prepare();
                         if (seekMs > 0) player.seekTo(seekMs);
                         player.play();
@@ -784,14 +958,14 @@ public class PlaybackService extends Service {
                         currentResolvedStreamAtMs = System.currentTimeMillis();
                         pendingPlayRequestedAtMs = 0L;
                         refreshArtworkAsync(currentThumbnailUrl);
-                        updateNotification();
-                        broadcastState();
+                        publishState();
+                        schedulePrefetch();
                     } catch (Throwable playbackSetupFailure) {
                         pendingPlayRequestedAtMs = 0L;
                         lastPlaybackError = "Playback setup failed: " + rootMessage(playbackSetupFailure);
                         debugToast("Playback setup failed");
                         Log.e(TAG, "Failed to prepare player after extraction", playbackSetupFailure);
-                        broadcastState();
+                        publishState();
                     }
                 });
             } catch (Throwable t) {
@@ -800,7 +974,7 @@ public class PlaybackService extends Service {
                 }
                 lastPlaybackError = "Extraction failed: " + rootMessage(t);
                 Log.e(TAG, "Unable to resolve stream URL", t);
-                broadcastState();
+                publishState();
             }
         });
     }
@@ -810,6 +984,7 @@ public class PlaybackService extends Service {
         if (preferences.getBoolean(KEY_DEMO_SEEDED_ON_FIRST_LAUNCH, false)) return;
         if (!playbackQueue.isEmpty()) return;
         if (currentVideoId != null && !currentVideoId.trim().isEmpty()) return;
+        queueRevision++;
         playbackQueue.add(new QueueItem(
                 DEMO_VIDEO_ID,
                 DEMO_TITLE,
@@ -817,6 +992,7 @@ public class PlaybackService extends Service {
                 DEMO_VIDEO_ID,
                 ""
         ));
+        playbackJournal.replaceQueue(playbackQueue.asList());
         currentQueueIndex = 0;
         currentVideoId = DEMO_VIDEO_ID;
         currentTitle = DEMO_TITLE;
@@ -825,6 +1001,7 @@ public class PlaybackService extends Service {
     }
 
     private void resetQueueToSingleSelection(String videoId, String title, String artist, String thumbnailUrl) {
+        queueRevision++;
         playbackQueue.clear();
         playbackQueue.add(new QueueItem(
                 videoId,
@@ -833,28 +1010,40 @@ public class PlaybackService extends Service {
                 videoId,
                 thumbnailUrl == null ? "" : thumbnailUrl
         ));
+        playbackJournal.replaceQueue(playbackQueue.asList());
         currentQueueIndex = 0;
         pendingQueueIndex = -1;
     }
 
-    private StreamResolution resolveStreamUrl(String videoId, int attempt) throws Exception {
+    private StreamResolution resolveStreamUrl(String videoId, int attempt, long requestToken,
+                                              ResolverScheduler.Priority priority) throws Exception {
+        final boolean mode = videoMode;
         Log.d(PLAYER_DEBUG_TAG, "Starting extraction");
         Log.d(TAG, "Extractor request: source=" + videoId);
-        YouTubeStreamExtractor.ExtractionResult extraction =
-                youTubeStreamExtractor.extract(videoId, videoMode, attempt);
+        // Concurrent requests for the same video share one extraction; this caller only
+        // owns its ticket, so cancelling it never starves the others.
+        StreamResolver.Ticket ticket = streamResolver.open(videoId, mode);
+        activeResolveTicket = ticket;
+        if (requestToken != resolveRequestToken) ticket.cancel();
+        // Preempt only once this ticket is held: a prefetch of this very video keeps
+        // running for us instead of being aborted and restarted.
+        resolverScheduler.preemptBelow(priority);
+        YouTubeStreamExtractor.ExtractionResult extraction;
+        try {
+            extraction = ticket.await(attempt);
+        } finally {
+            if (activeResolveTicket == ticket) activeResolveTicket = null;
+        }
 
-        StreamResolution resolution = new StreamResolution(
-                extraction.streamUrl,
-                extraction.audioStreamUrl,
-                extraction.videoStreamUrl
-        );
+        StreamResolution resolution = new StreamResolution(extraction);
 
         Log.d(TAG, "Extractor response: attempt=" + attempt
                 + " videoId=" + videoId
-                + " mode=" + (videoMode ? "video" : "audio")
+                + " mode=" + (mode ? "video" : "audio")
                 + " selectedHost=" + safeHost(resolution.streamUrl)
                 + " audioHost=" + safeHost(resolution.audioStreamUrl)
-                + " videoHost=" + safeHost(resolution.videoStreamUrl));
+                + " videoHost=" + safeHost(resolution.videoStreamUrl)
+                + " kind=" + extraction.kind + (extraction.live ? " live" : ""));
 
         return resolution;
     }
@@ -913,8 +1102,70 @@ public class PlaybackService extends Service {
         return (msg == null || msg.trim().isEmpty()) ? "Unknown extractor error" : msg;
     }
 
+    // -------------------------------------------------------------------------
+    // Player error recovery
+    // -------------------------------------------------------------------------
+    // Climbs one rung of the recovery ladder for the current track. Returns false once
+    // every rung's budget is spent.
+    private boolean recoverFromPlayerError(boolean ioError, boolean sourceError) {
+        long positionMs = Math.max(0L, player != null ? player.getCurrentPosition() : currentPositionMs);
+        PlaylistEntry entry = player != null ? playlistEntryOf(player.getCurrentMediaItem()) : null;
+        if (entry != null && !currentVideoId.equals(entry.videoId)) entry = null;
+        boolean hasFallback = entry != null && !entry.fallbackUrls.isEmpty();
+
+        RecoveryLadder.Rung rung = recoveryLadder.next(
+                currentVideoId, SystemClock.elapsedRealtime(), ioError, hasFallback);
+        Log.w(TAG, "Player error recovery: rung=" + rung + " videoId=" + currentVideoId
+                + " positionMs=" + positionMs + " sourceError=" + sourceError);
+        switch (rung) {
+            case RETRY_SAME:
+                if (entry == null) break;
+                // The failed source stays set; prepare() reopens it from the current position.
+                player.prepare();
+                player.play();
+                return true;
+            case FAILOVER:
+                if (entry == null) break;
+                failOverToNextCandidate(entry, positionMs);
+                return true;
+            case RE_EXTRACT:
+                break;
+            case GIVE_UP:
+            default:
+                return false;
+        }
+        // The cached URL is the one that just failed; force a fresh extraction.
+        resolvedStreamCache.invalidate(currentVideoId);
+        resolveAndPlay(currentVideoId, positionMs, ResolverScheduler.Priority.ERROR_RECOVERY);
+        return true;
+    }
+
+    // Replaces the failing source with the next ranked URL from the same extraction, which
+    // also becomes the cached result so later plays skip the dead URL.
+    private void failOverToNextCandidate(PlaylistEntry failed, long positionMs) {
+        String candidate = failed.fallbackUrls.get(0);
+        YouTubeStreamExtractor.ExtractionResult next = new YouTubeStreamExtractor.ExtractionResult(
+                candidate, failed.audioStreamUrl, failed.videoStreamUrl,
+                YouTubeStreamExtractor.StreamKind.ofUrl(candidate), failed.live, null,
+                failed.fallbackUrls.subList(1, failed.fallbackUrls.size()));
+        Log.w(TAG, "Failing over videoId=" + failed.videoId + " to host=" + safeHost(candidate)
+                + " remaining=" + next.fallbackUrls.size());
+        resolvedStreamCache.put(failed.videoId, failed.videoMode, next);
+        player.setMediaSource(buildPlaylistMediaSource(
+                new PlaylistEntry(failed.queueIndex, failed.videoId, next, failed.videoMode)), positionMs);
+        player.prepare();
+        player.play();
+        currentResolvedStreamUrl = candidate;
+        schedulePrefetch();
+    }
+
     private boolean isResolvedStreamStale() {
         if (currentResolvedStreamAtMs <= 0L) return true;
+        long expiresAtMs = ResolvedStreamCache.parseExpiryMs(currentResolvedStreamUrl);
+        if (expiresAtMs > 0L) {
+            return System.currentTimeMillis()
+                    >= expiresAtMs - ResolvedStreamCache.EXPIRY_SAFETY_MARGIN_MS;
+        }
         long ageMs = System.currentTimeMillis() - currentResolvedStreamAtMs;
         return ageMs > RESOLVED_STREAM_REUSE_WINDOW_MS;
     }
@@ -923,11 +1174,13 @@ public class PlaybackService extends Service {
         final String streamUrl;
         @Nullable final String audioStreamUrl;
         @Nullable final String videoStreamUrl;
+        final YouTubeStreamExtractor.ExtractionResult extraction;
 
-        StreamResolution(String streamUrl, @Nullable String audioStreamUrl, @Nullable String videoStreamUrl) {
-            this.streamUrl = streamUrl;
-            this.audioStreamUrl = audioStreamUrl;
-            this.videoStreamUrl = videoStreamUrl;
+        StreamResolution(YouTubeStreamExtractor.ExtractionResult extraction) {
+            this.streamUrl = extraction.streamUrl;
+            this.audioStreamUrl = extraction.audioStreamUrl;
+            this.videoStreamUrl = extraction.videoStreamUrl;
+            this.extraction = extraction;
         }
     }
     // -------------------------------------------------------------------------
@@ -935,17 +1188,22 @@ public class PlaybackService extends Service {
     // -------------------------------------------------------------------------
     private void handleSetQueue(Intent intent) {
         if (intent == null) return;
+        queuePrefetcher.invalidate();
+        trimUpcomingPlaylist();
         String queueJson = intent.getStringExtra("queue_json");
-        playbackQueue.clear();
+        queueRevision++;
         if (queueJson == null || queueJson.trim().isEmpty()) {
+            playbackQueue.clear();
+            playbackJournal.replaceQueue(playbackQueue.asList());
             currentQueueIndex = -1;
             return;
         }
+        List<QueueItem> incoming = new ArrayList<>();
         try {
             JSONArray arr = new JSONArray(queueJson);
             for (int i = 0; i < arr.length(); i++) {
                 JSONObject obj = arr.getJSONObject(i);
-                playbackQueue.add(new QueueItem(
+                incoming.add(new QueueItem(
                         obj.optString("id"),
                         obj.optString("title"),
                         obj.optString("artist"),
@@ -956,6 +1214,7 @@ public class PlaybackService extends Service {
         } catch (JSONException e) {
             Log.e(TAG, "Failed to parse queue JSON", e);
         }
+        replaceQueue(incoming);
         int idx = intent.getIntExtra("queue_index", -1);
         currentQueueIndex = (idx >= 0 && idx < playbackQueue.size()) ? idx : 0;
 
@@ -967,14 +1226,16 @@ public class PlaybackService extends Service {
             return;
         }
 
-        broadcastState();
+        publishState();
         dispatchPlaybackEvent("queueUpdated");
+        schedulePrefetch();
     }
 
     private void handleSetIndex(Intent intent) {
         if (intent == null) return;
         int index = intent.getIntExtra("queue_index", -1);
         if (index < 0) return;
+        queuePrefetcher.invalidate();
         if (playbackQueue.isEmpty()) {
             pendingQueueIndex = index;
             Log.w(TAG, "Received setIndex before queue was available. Deferring index=" + index);
@@ -986,6 +1247,7 @@ public class PlaybackService extends Service {
 
     private void playQueueIndex(int index) {
         if (index < 0 || index >= playbackQueue.size()) return;
+        recoveryLadder.reset();
         currentQueueIndex   = index;
         QueueItem item      = playbackQueue.get(index);
         currentVideoId      = item.videoId;
@@ -994,7 +1256,7 @@ public class PlaybackService extends Service {
         currentThumbnailUrl = sanitizeThumbnailUrl(item.thumbnailUrl, item.videoId);
         pendingPlayRequestedAtMs = System.currentTimeMillis();
         ensureForegroundWithCurrentState();
-        broadcastState();
+        publishState();
         resolveAndPlay(item.videoId, 0L);
         dispatchPlaybackEvent("trackChanged");
     }
@@ -1003,6 +1265,8 @@ public class PlaybackService extends Service {
         if (playbackQueue.isEmpty()) return false;
         int newIndex = currentQueueIndex + direction;
         if (newIndex < 0 || newIndex >= playbackQueue.size()) return false;
+        recoveryLadder.reset();
+        if (seekToPlaylistEntry(newIndex)) return true;
         currentQueueIndex   = newIndex;
         QueueItem item      = playbackQueue.get(newIndex);
         currentVideoId      = item.videoId;
@@ -1011,7 +1275,7 @@ public class PlaybackService extends Service {
         currentThumbnailUrl = sanitizeThumbnailUrl(item.thumbnailUrl, item.videoId);
         pendingPlayRequestedAtMs = System.currentTimeMillis();
         ensureForegroundWithCurrentState();
-        broadcastState();
+        publishState();
         resolveAndPlay(item.videoId, 0L);
         dispatchPlaybackEvent("trackChanged");
         return true;
@@ -1021,40 +1285,202 @@ public class PlaybackService extends Service {
         if (intent == null) return;
         String queueJson = intent.getStringExtra("queue_json");
         if (queueJson == null || queueJson.trim().isEmpty()) return;
+        queuePrefetcher.invalidate();
+        trimUpcomingPlaylist();
         try {
             JSONArray arr = new JSONArray(queueJson);
             int insertIndex = Math.max(0, Math.min(playbackQueue.size(), currentQueueIndex + 1));
+            List<QueueItem> added = new ArrayList<>(arr.length());
             for (int i = 0; i < arr.length(); i++) {
                 JSONObject obj = arr.getJSONObject(i);
-                QueueItem item = new QueueItem(
+                added.add(new QueueItem(
                         obj.optString("id"),
                         obj.optString("title"),
                         obj.optString("artist"),
                         extractQueueVideoId(obj),
                         obj.optString("thumbnailUrl")
-                );
-                playbackQueue.add(insertIndex + i, item);
+                ));
             }
+            playbackQueue.insert(insertIndex, added);
+            playbackJournal.insert(insertIndex, added);
+            queueRevision++;
             if (currentQueueIndex < 0 && !playbackQueue.isEmpty()) {
                 currentQueueIndex = 0;
             }
-            broadcastState();
+            publishState();
             dispatchPlaybackEvent("queueUpdated");
+            schedulePrefetch();
         } catch (JSONException e) {
             Log.e(TAG, "Failed to parse add-to-queue JSON", e);
         }
     }
 
-    private void syncQueueIndexForVideo(String videoId) {
-        for (int i = 0; i < playbackQueue.size(); i++) {
-            if (videoId.equals(playbackQueue.get(i).videoId)) {
-                currentQueueIndex = i;
-                return;
-            }
+    // Resolves the next few queue items in the background while the current one plays.
+    private void schedulePrefetch() {
+        if (currentResolvedStreamUrl == null || currentQueueIndex < 0) return;
+        appendUpcomingToPlaylist();
+        List<String> upcoming = new ArrayList<>();
+        int end = Math.min(playbackQueue.size(), currentQueueIndex + 1 + queuePrefetcher.getDepth());
+        for (int i = currentQueueIndex + 1; i < end; i++) {
+            String videoId = playbackQueue.videoIdAt(i);
+            if (DEMO_VIDEO_ID.equals(videoId)) continue;
+            upcoming.add(videoId);
+        }
+        queuePrefetcher.schedule(upcoming, videoMode);
+    }
+
+    // -------------------------------------------------------------------------
+    // Gapless playlist: ExoPlayer holds the current item plus the next resolved one,
+    // so it can pre-buffer and move on without silence. Each media item is tagged with
+    // its PlaylistEntry, which maps timeline windows back to queue positions.
+    // -------------------------------------------------------------------------
+    private static final class PlaylistEntry {
+        final int queueIndex;
+        final String videoId;
+        final String streamUrl;
+        @Nullable final String audioStreamUrl;
+        @Nullable final String videoStreamUrl;
+        final YouTubeStreamExtractor.StreamKind kind;
+        final boolean live;
+        @Nullable final String dashManifest;
+        final List<String> fallbackUrls;
+        final boolean videoMode;
+
+        PlaylistEntry(int queueIndex, String videoId,
+                      YouTubeStreamExtractor.ExtractionResult result, boolean videoMode) {
+            this.queueIndex = queueIndex;
+            this.videoId = videoId;
+            this.streamUrl = result.streamUrl;
+            this.audioStreamUrl = result.audioStreamUrl;
+            this.videoStreamUrl = result.videoStreamUrl;
+            this.kind = result.kind;
+            this.live = result.live;
+            this.dashManifest = result.dashManifest;
+            this.fallbackUrls = result.fallbackUrls;
+            this.videoMode = videoMode;
+        }
+    }
+
+    private MediaSource buildPlaylistMediaSource(PlaylistEntry entry) {
+        MediaItem.Builder item = new MediaItem.Builder()
+                .setUri(entry.streamUrl)
+                .setMediaId(entry.videoId)
+                .setTag(entry);
+        // Adaptive sources key their segments themselves; the videoId:itag key only
+        // describes a single progressive file.
+        if (entry.kind == YouTubeStreamExtractor.StreamKind.PROGRESSIVE) {
+            item.setCustomCacheKey(MediaCache.cacheKeyFor(entry.videoId, entry.streamUrl));
         }
+        return playerMediaSources().create(item.build(), entry.kind, entry.live, entry.dashManifest);
+    }
+
+    @Nullable
+    private static PlaylistEntry playlistEntryOf(@Nullable MediaItem mediaItem) {
+        if (mediaItem == null || mediaItem.localConfiguration == null) return null;
+        Object tag = mediaItem.localConfiguration.tag;
+        return tag instanceof PlaylistEntry ? (PlaylistEntry) tag : null;
     }
 
-    private String extractQueueVideoId(JSONObject obj) {
+    // Queue position of an entry; falls back to the index when the queue was edited since.
+    private int queueIndexOf(PlaylistEntry entry) {
+        if (entry.queueIndex >= 0 && entry.queueIndex < playbackQueue.size()
+                && entry.videoId.equals(playbackQueue.videoIdAt(entry.queueIndex))) {
+            return entry.queueIndex;
+        }
+        return playbackQueue.indexOf(entry.videoId);
+    }
+
+    // Appends the next queue item once its stream is resolved; the prefetcher calls back
+    // here when it finishes one.
+    private void appendUpcomingToPlaylist() {
+        if (player == null || currentQueueIndex < 0) return;
+        int nextIndex = currentQueueIndex + 1;
+        if (nextIndex >= playbackQueue.size()) return;
+        int window = player.getCurrentMediaItemIndex();
+        if (window + 1 < player.getMediaItemCount()) return;
+        PlaylistEntry current = playlistEntryOf(player.getCurrentMediaItem());
+        if (current == null || queueIndexOf(current) != currentQueueIndex) {
+            return;
+        }
+
+        QueueItem next = playbackQueue.get(nextIndex);
+        if (next.videoId == null || next.videoId.isEmpty() || DEMO_VIDEO_ID.equals(next.videoId)) return;
+        YouTubeStreamExtractor.ExtractionResult resolved = resolvedStreamCache.get(next.videoId, videoMode);
+        if (resolved == null) return;
+        player.addMediaSource(buildPlaylistMediaSource(new PlaylistEntry(
+                nextIndex, next.videoId, resolved, videoMode)));
+        Log.d(TAG, "Queued next item for gapless playback: videoId=" + next.videoId
+                + " queueIndex=" + nextIndex);
+    }
+
+    // Drops appended entries after the playing one, e.g. because the queue or mode changed.
+    private void trimUpcomingPlaylist() {
+        if (player == null) return;
+        int count = player.getMediaItemCount();
+        int window = player.getCurrentMediaItemIndex();
+        if (window + 1 < count) player.removeMediaItems(window + 1, count);
+    }
+
+    // Jumps to an already-buffered playlist entry instead of resolving again.
+    private boolean seekToPlaylistEntry(int queueIndex) {
+        if (player == null) return false;
+        int count = player.getMediaItemCount();
+        for (int window = player.getCurrentMediaItemIndex() + 1; window < count; window++) {
+            PlaylistEntry entry = playlistEntryOf(player.getMediaItemAt(window));
+            if (entry == null || entry.videoMode != videoMode || queueIndexOf(entry) != queueIndex) continue;
+            player.seekToDefaultPosition(window);
+            player.play();
+            onPlaylistAdvanced(entry, false);
+            return true;
+        }
+        return false;
+    }
+
+    // Adopts the entry ExoPlayer moved to as the current track.
+    private void onPlaylistAdvanced(PlaylistEntry entry, boolean autoAdvance) {
+        int queueIndex = queueIndexOf(entry);
+        if (queueIndex == currentQueueIndex && entry.videoId.equals(currentVideoId)) return;
+
+        // Nothing in flight is wanted any more: the player already has this track.
+        ++resolveRequestToken;
+        StreamResolver.Ticket superseded = activeResolveTicket;
+        if (superseded != null) superseded.cancel();
+
+        if (queueIndex >= 0) {
+            currentQueueIndex = queueIndex;
+            QueueItem item = playbackQueue.get(queueIndex);
+            currentTitle = item.title;
+            currentArtist = item.artist;
+            currentThumbnailUrl = sanitizeThumbnailUrl(item.thumbnailUrl, item.videoId);
+        }
+        currentVideoId = entry.videoId;
+        currentResolvedStreamUrl = entry.streamUrl;
+        currentResolvedStreamAtMs = System.currentTimeMillis();
+        audioStreamUrl = entry.audioStreamUrl;
+        videoStreamUrl = entry.videoStreamUrl;
+        currentPositionMs = 0L;
+        pendingPlayRequestedAtMs = 0L;
+        lastPlaybackError = null;
+        Log.d(TAG, "Gapless transition to videoId=" + entry.videoId
+                + " queueIndex=" + queueIndex + " auto=" + autoAdvance);
+
+        if (player != null) {
+            int window = player.getCurrentMediaItemIndex();
+            if (window > 0) player.removeMediaItems(0, window);
+        }
+        refreshArtworkAsync(currentThumbnailUrl);
+        publishState();
+        dispatchPlaybackEvent("trackChanged");
+        if (autoAdvance) dispatchActionToUi(ACTION_NEXT);
+        schedulePrefetch();
+    }
+
+    private void syncQueueIndexForVideo(String videoId) {
+        int index = playbackQueue.indexOf(videoId);
+        if (index >= 0) currentQueueIndex = index;
+    }
+
+    private static String extractQueueVideoId(JSONObject obj) {
         if (obj == null) return "";
         String videoId = obj.optString("videoId", "").trim();
         if (!videoId.isEmpty()) return videoId;
@@ -1223,49 +1649,79 @@ public class PlaybackService extends Service {
     }
 
     // -------------------------------------------------------------------------
-    // Broadcast state
+    // State publication
     // -------------------------------------------------------------------------
-    private void broadcastState() {
+    /**
+     * Publishes the current state; subscribers registered in {@link #initStateSubscribers}
+     * decide what, if anything, to send on.
+     */
+    private void publishState() {
+        statePublisher.publish(captureState());
+    }
+
+    private PlaybackState captureState() {
         boolean isPlaying = player != null && player.isPlaying();
         long pos = player != null
                 ? Math.max(0, player.getCurrentPosition()) : currentPositionMs;
         long dur = player != null
                 ? Math.max(0, player.getDuration()) : currentDurationMs;
+        return new PlaybackState(currentTitle, currentArtist, currentThumbnailUrl, currentVideoId,
+                isPlaying, pendingPlayRequestedAtMs > 0, pos, dur,
+                currentQueueIndex, playbackQueue.size(), queueRevision,
+                videoMode, lastPlaybackError, isCurrentTrackLiked(), SystemClock.elapsedRealtime());
+    }
+
+    private void initStateSubscribers() {
+        final int everythingButPosition = PlaybackState.FIELDS_ALL & ~PlaybackState.FIELD_POSITION;
+        // Position ticks only matter to an activity that is on screen.
+        statePublisher.subscribe(PlaybackState.FIELDS_ALL, STATE_PROGRESS_INTERVAL_MS, everythingButPosition,
+                (state, changed) -> {
+                    if (changed == PlaybackState.FIELD_POSITION && !uiVisible) return;
+                    for (StateObserver observer : stateObservers) observer.onPlaybackStateChanged(state);
+                });
+        statePublisher.subscribe(
+                PlaybackState.FIELD_POSITION | PlaybackState.FIELD_SEEK | PlaybackState.FIELD_DURATION,
+                STATE_PROGRESS_INTERVAL_MS, PlaybackState.FIELD_SEEK | PlaybackState.FIELD_DURATION,
+                (state, changed) -> sendProgressToWeb(state.positionMs, state.durationMs));
+        // The session extrapolates position itself; it needs only jumps and real changes.
+        statePublisher.subscribe(PlaybackState.FIELDS_METADATA | PlaybackState.FIELD_PLAYING
+                        | PlaybackState.FIELD_SEEK | PlaybackState.FIELD_DURATION | PlaybackState.FIELD_QUEUE,
+                0L, PlaybackState.FIELDS_ALL,
+                (state, changed) -> updatePlaybackState());
+        statePublisher.subscribe(PlaybackState.FIELDS_METADATA | PlaybackState.FIELD_PLAYING
+                        | PlaybackState.FIELD_PENDING_PLAY | PlaybackState.FIELD_SEEK
+                        | PlaybackState.FIELD_DURATION | PlaybackState.FIELD_QUEUE,
+                STATE_PROGRESS_INTERVAL_MS, PlaybackState.FIELD_PLAYING | PlaybackState.FIELD_PENDING_PLAY,
+                (state, changed) -> updateNotification());
+        // The widget renders from the persisted snapshot, so it refreshes after the write.
+        statePublisher.subscribe(PlaybackState.FIELDS_ALL, PERSIST_POSITION_INTERVAL_MS, everythingButPosition,
+                (state, changed) -> {
+                    persistState();
+                    if ((changed & WIDGET_FIELDS) != 0) PlaybackWidgetProvider.requestRefresh(this);
+                });
+    }
 
+    private void sendStateBroadcast(PlaybackState state) {
         Intent intent = new Intent(ACTION_STATE_CHANGED);
-        intent.putExtra("title",        currentTitle);
-        intent.putExtra("artist",       currentArtist);
-        intent.putExtra("playing",      isPlaying);
-        intent.putExtra("position_ms",  pos);
-        intent.putExtra("duration_ms",  dur);
-        intent.putExtra("thumbnailUrl", currentThumbnailUrl);
-        intent.putExtra("queue_index",  currentQueueIndex);
-        intent.putExtra("queue_length", playbackQueue.size());
-        intent.putExtra("video_mode",   videoMode);
-        intent.putExtra("pending_play", pendingPlayRequestedAtMs > 0);
-        intent.putExtra("last_error",   lastPlaybackError);
-        intent.putExtra("liked",       isCurrentTrackLiked());
+        intent.putExtra("title",        state.title);
+        intent.putExtra("artist",       state.artist);
+        intent.putExtra("playing",      state.playing);
+        intent.putExtra("position_ms",  state.positionMs);
+        intent.putExtra("duration_ms",  state.durationMs);
+        intent.putExtra("thumbnailUrl", state.thumbnailUrl);
+        intent.putExtra("queue_index",  state.queueIndex);
+        intent.putExtra("queue_length", state.queueLength);
+        intent.putExtra("video_mode",   state.videoMode);
+        intent.putExtra("pending_play", state.pendingPlay);
+        intent.putExtra("last_error",   state.lastError);
+        intent.putExtra("liked",        state.liked);
         intent.putExtra("event_ts",     System.currentTimeMillis());
         sendBroadcast(intent);
-
-        PlaybackWidgetProvider.requestRefresh(this);
     }
 
     private void dispatchActionToUi(String action) {
-        Intent intent = new Intent(ACTION_MEDIA_CONTROL);
-        intent.putExtra("action", action);
-        intent.putExtra("queue_index", currentQueueIndex);
-        intent.putExtra("queue_length", playbackQueue.size());
-        intent.putExtra("title", currentTitle);
-        intent.putExtra("artist", currentArtist);
-        intent.putExtra("video_id", currentVideoId);
-        intent.putExtra("position_ms", player != null
-                ? Math.max(0, player.getCurrentPosition()) : currentPositionMs);
-        intent.putExtra("duration_ms", player != null
-                ? Math.max(0, player.getDuration()) : currentDurationMs);
-        intent.putExtra("playing", player != null && player.isPlaying());
-        intent.putExtra("event_ts", System.currentTimeMillis());
-        sendBroadcast(intent);
+        PlaybackState state = captureState();
+        for (StateObserver observer : stateObservers) observer.onMediaAction(action, state);
     }
 
     private void sendProgressToWeb(long posMs, long durMs) {
@@ -1323,9 +1779,9 @@ public class PlaybackService extends Service {
             return;
         }
         final int ver = ++artworkRequestVersion;
-        artworkExecutor.execute(() -> {
+        resolverScheduler.submit(ResolverScheduler.Priority.BACKGROUND, () -> {
             try {
-                Bitmap bmp = fetchBitmap(url);
+                Bitmap bmp = HttpStack.fetchBitmap(networkPolicy.artworkUrl(url));
                 if (ver != artworkRequestVersion) return;
                 if (bmp != null) bmp = scaleBitmap(bmp, MAX_ARTWORK_PX);
                 final Bitmap finalBmp = bmp;
@@ -1342,21 +1798,6 @@ public class PlaybackService extends Service {
         });
     }
 
-    private Bitmap fetchBitmap(String url) {
-        try {
-            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setConnectTimeout(8000);
-            conn.setReadTimeout(8000);
-            conn.connect();
-            InputStream is = conn.getInputStream();
-            Bitmap bmp = BitmapFactory.decodeStream(is);
-            is.close();
-            return bmp;
-        } catch (Throwable t) {
-            return null;
-        }
-    }
-
     private Bitmap scaleBitmap(Bitmap src, int maxPx) {
         int w = src.getWidth(), h = src.getHeight();
         if (w <= maxPx && h <= maxPx) return src;
@@ -1381,9 +1822,7 @@ public class PlaybackService extends Service {
     // -------------------------------------------------------------------------
     private String sanitizeThumbnailUrl(String url, String videoId) {
         if (url != null && !url.trim().isEmpty()) return url.trim();
-        if (videoId != null && !videoId.trim().isEmpty())
-            return "https://i.ytimg.com/vi/" + videoId.trim() + "/hqdefault.jpg";
-        return "";
+        return QueueStore.defaultThumbnailUrl(videoId);
     }
 
 
@@ -1391,7 +1830,9 @@ public class PlaybackService extends Service {
         String likeId = getCurrentTrackLikeId();
         if (likeId == null || likeId.isEmpty()) return;
         if (liked) likedTrackIds.add(likeId); else likedTrackIds.remove(likeId);
-        broadcastState();
+        playbackJournal.setLiked(likeId, liked);
+        queueRevision++;
+        publishState();
         dispatchPlaybackEvent("likeUpdated");
     }
 
@@ -1434,6 +1875,7 @@ public class PlaybackService extends Service {
     // -------------------------------------------------------------------------
     // Persistence
     // -------------------------------------------------------------------------
+    // Scalar playback fields only; the queue and likes go to the journal as they change.
     private void persistState() {
         boolean playing = player != null && player.isPlaying();
         long pos = player != null
@@ -1450,25 +1892,39 @@ public class PlaybackService extends Service {
         ed.putLong(KEY_DURATION_MS,     dur);
         ed.putString(KEY_THUMBNAIL_URL, currentThumbnailUrl);
         ed.putInt(KEY_QUEUE_INDEX,      currentQueueIndex);
-        try {
-            JSONArray arr = new JSONArray();
-            for (QueueItem item : playbackQueue) {
-                JSONObject obj = new JSONObject();
-                obj.put("id",           item.id);
-                obj.put("title",        item.title);
-                obj.put("artist",       item.artist);
-                obj.put("videoId",      item.videoId);
-                obj.put("thumbnailUrl", item.thumbnailUrl);
-                arr.put(obj);
-            }
-            ed.putString(KEY_QUEUE_JSON, arr.toString());
-        } catch (JSONException ignored) {}
-        JSONArray liked = new JSONArray();
-        for (String id : likedTrackIds) liked.put(id);
-        ed.putString(KEY_LIKED_TRACKS, liked.toString());
+        ed.putString(KEY_VIDEO_ID,      currentVideoId);
         ed.apply();
     }
 
+    // Applies a wholesale queue replacement from the web UI. Appends, removals, block moves
+    // and small splices are diffed into the same edits on the journal; anything bigger
+    // rewrites it.
+    private void replaceQueue(List<QueueItem> incoming) {
+        if (!playbackQueue.isEmpty() && playbackQueue.editTo(incoming, new QueueStore.EditListener() {
+            @Override
+            public void onInsert(int index, @NonNull List<QueueItem> items) {
+                playbackJournal.insert(index, items);
+            }
+
+            @Override
+            public void onRemove(int from, int count) {
+                playbackJournal.remove(from, count);
+            }
+
+            @Override
+            public void onMove(int from, int count, int to) {
+                playbackJournal.move(from, count, to);
+            }
+        })) {
+            return;
+        }
+        playbackQueue.clear();
+        playbackQueue.addAll(incoming);
+        playbackJournal.replaceQueue(playbackQueue.asList());
+    }
+
+    // Synchronous part of the restore: the scalar snapshot in preferences, enough to show
+    // and resume the current track. The queue and likes follow in restoreQueueAsync().
     private void restoreState() {
         SharedPreferences p = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         currentTitle        = p.getString(KEY_TITLE,         "HarmonyStream");
@@ -1477,6 +1933,61 @@ public class PlaybackService extends Service {
         currentDurationMs   = Math.max(0, p.getLong(KEY_DURATION_MS,  0));
         currentThumbnailUrl = p.getString(KEY_THUMBNAIL_URL, "");
         currentQueueIndex   = p.getInt(KEY_QUEUE_INDEX,      -1);
+        currentVideoId      = p.getString(KEY_VIDEO_ID,      null);
+    }
+
+    /**
+     * Replays the journal (or, once, the legacy JSON in preferences) on the journal thread
+     * and hands the result to {@link #onQueueRestored} on the main thread, so cold start
+     * does not grow with the queue.
+     */
+    private void restoreQueueAsync() {
+        final SharedPreferences p = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        journalExecutor.execute(() -> {
+            boolean journaled = playbackJournal.exists();
+            PlaybackJournal.Contents contents = playbackJournal.load();
+            if (contents.droppedTail != null) Log.w(TAG, "Playback journal " + contents.droppedTail);
+            boolean migrated = !journaled
+                    && (p.contains(KEY_QUEUE_JSON) || p.contains(KEY_LIKED_TRACKS));
+            final PlaybackJournal.Contents restored = migrated ? readLegacyQueue(p) : contents;
+            mainHandler.post(() -> onQueueRestored(restored, migrated));
+        });
+    }
+
+    private void onQueueRestored(PlaybackJournal.Contents restored, boolean migrated) {
+        if (queueRestored || destroyed) return;
+        queueRestored = true;
+        // A play request with its own track may already have replaced the queue.
+        if (playbackQueue.isEmpty()) playbackQueue.addAll(restored.queue);
+        likedTrackIds.addAll(restored.liked);
+        if (migrated) {
+            playbackJournal.replaceAll(playbackQueue.asList(), likedTrackIds);
+            getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                    .remove(KEY_QUEUE_JSON).remove(KEY_LIKED_TRACKS).apply();
+        }
+        if (currentVideoId == null || currentVideoId.isEmpty()) {
+            currentVideoId = resolveVideoIdFromQueueIndex();
+        }
+        seedDemoTrackWhenEmpty();
+        queueRevision++;
+        Log.d(TAG, "Queue restored: size=" + playbackQueue.size()
+                + " deferredCommands=" + pendingQueueCommands.size());
+
+        List<Runnable> deferred = new ArrayList<>(pendingQueueCommands);
+        pendingQueueCommands.clear();
+        for (Runnable command : deferred) command.run();
+        appendUpcomingToPlaylist();
+        publishState();
+    }
+
+    private void whenQueueRestored(Runnable command) {
+        if (queueRestored) command.run(); else pendingQueueCommands.add(command);
+    }
+
+    // Queue and likes from their old JSON preference keys; runs on the journal thread.
+    private static PlaybackJournal.Contents readLegacyQueue(SharedPreferences p) {
+        List<QueueItem> queue = new ArrayList<>();
+        java.util.Set<String> liked = new java.util.LinkedHashSet<>();
         String queueJson    = p.getString(KEY_QUEUE_JSON,    null);
         String likedJson    = p.getString(KEY_LIKED_TRACKS, null);
         if (likedJson != null) {
@@ -1484,7 +1995,7 @@ public class PlaybackService extends Service {
                 JSONArray arr = new JSONArray(likedJson);
                 for (int i = 0; i < arr.length(); i++) {
                     String id = arr.optString(i, "");
-                    if (!id.isEmpty()) likedTrackIds.add(id);
+                    if (!id.isEmpty()) liked.add(id);
                 }
             } catch (JSONException ignored) {}
         }
@@ -1494,7 +2005,7 @@ public class PlaybackService extends Service {
                 JSONArray arr = new JSONArray(queueJson);
                 for (int i = 0; i < arr.length(); i++) {
                     JSONObject obj = arr.getJSONObject(i);
-                    playbackQueue.add(new QueueItem(
+                    queue.add(new QueueItem(
                             obj.optString("id"),
                             obj.optString("title"),
                             obj.optString("artist"),
@@ -1506,10 +2017,7 @@ public class PlaybackService extends Service {
                 Log.w(TAG, "Could not restore queue", e);
             }
         }
-
-        if (currentVideoId == null || currentVideoId.isEmpty()) {
-            currentVideoId = resolveVideoIdFromQueueIndex();
-        }
+        return new PlaybackJournal.Contents(queue, liked);
     }
 
     @Nullable
@@ -1538,6 +2046,45 @@ public class PlaybackService extends Service {
 
     public ExoPlayer getPlayer() { return player; }
 
+    /**
+     * Called by the bound activity as it starts and stops, so audio playback can use a
+     * fast-start buffer on screen and a smaller one in the background.
+     */
+    public void setUiVisible(boolean visible) {
+        mainHandler.post(() -> {
+            uiVisible = visible;
+            updateBufferingProfile();
+            // Position-only updates were skipped while hidden.
+            if (visible) {
+                PlaybackState state = captureState();
+                for (StateObserver observer : stateObservers) observer.onPlaybackStateChanged(state);
+            }
+        });
+    }
+
+    private void updateBufferingProfile() {
+        bufferingLoadControl.setProfile(BufferingLoadControl.Profile.select(
+                videoMode, uiVisible, networkPolicy.isConstrained()));
+    }
+
+    // Main thread. Streams already playing keep their quality; the next resolve, buffer
+    // decision and prefetch round follow the new network.
+    private void onNetworkPolicyChanged() {
+        int previousDepth = queuePrefetcher.getDepth();
+        int depth = networkPolicy.prefetchDepth(BuildConfig.QUEUE_PREFETCH_DEPTH);
+        queuePrefetcher.setDepth(depth);
+        updateBufferingProfile();
+        if (resolvedStreamCache.setPolicyStrictness(networkPolicy.strictness())) {
+            // Upcoming items were resolved for the looser policy; resolve them again under
+            // the new caps.
+            queuePrefetcher.invalidate();
+            trimUpcomingPlaylist();
+            schedulePrefetch();
+        } else if (depth > previousDepth) {
+            schedulePrefetch();
+        }
+    }
+
     // -------------------------------------------------------------------------
     // Service lifecycle
     // -------------------------------------------------------------------------
@@ -1561,7 +2108,15 @@ public class PlaybackService extends Service {
 
     @Override
     public void onDestroy() {
+        destroyed = true;
         stopProgressUpdates();
+        statePublisher.flush();
+        statePublisher.release();
+        stateObservers.clear();
+        pendingQueueCommands.clear();
+        if (playbackJournal != null) playbackJournal.close();
+        journalExecutor.shutdown();
+        networkPolicy.stop();
         if (player != null) { player.release(); player = null; }
         if (mediaSessionConnector != null) mediaSessionConnector.setPlayer(null);
         if (mediaSession != null) {
@@ -1569,8 +2124,10 @@ public class PlaybackService extends Service {
             mediaSession.release();
         }
         if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
-        resolverExecutor.shutdownNow();
-        artworkExecutor.shutdownNow();
+        if (queuePrefetcher != null) queuePrefetcher.shutdown();
+        resolverScheduler.shutdown();
+        if (chunkedDataSourceFactory != null) chunkedDataSourceFactory.release();
+        MediaCache.release();
         currentResolvedStreamUrl = null;
         super.onDestroy();
     }
@@ -0,0 +1,119 @@
+package com.sansoft.harmonystram;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable snapshot of everything the service publishes about playback.
+ *
+ * <p>{@link #changesFrom} reports which fields differ as a bitmask of the {@code FIELD_*}
+ * constants, so each consumer can ignore updates it does not render. Position moving at
+ * playback speed is only {@link #FIELD_POSITION}; a jump that playback alone cannot explain
+ * (a seek, a new track) is also flagged {@link #FIELD_SEEK}.
+ */
+final class PlaybackState {
+
+    static final int FIELD_TITLE = 1;
+    static final int FIELD_ARTIST = 1 << 1;
+    static final int FIELD_THUMBNAIL = 1 << 2;
+    static final int FIELD_VIDEO_ID = 1 << 3;
+    static final int FIELD_PLAYING = 1 << 4;
+    static final int FIELD_PENDING_PLAY = 1 << 5;
+    static final int FIELD_POSITION = 1 << 6;
+    static final int FIELD_SEEK = 1 << 7;
+    static final int FIELD_DURATION = 1 << 8;
+    static final int FIELD_QUEUE = 1 << 9;
+    static final int FIELD_VIDEO_MODE = 1 << 10;
+    static final int FIELD_ERROR = 1 << 11;
+    static final int FIELD_LIKED = 1 << 12;
+
+    static final int FIELDS_METADATA = FIELD_TITLE | FIELD_ARTIST | FIELD_THUMBNAIL | FIELD_VIDEO_ID;
+    static final int FIELDS_ALL = (1 << 13) - 1;
+
+    // Drift between the reported and the extrapolated position still counted as playback.
+    static final long SEEK_TOLERANCE_MS = 1_500L;
+
+    @Nullable final String title;
+    @Nullable final String artist;
+    @Nullable final String thumbnailUrl;
+    @Nullable final String videoId;
+    final boolean playing;
+    final boolean pendingPlay;
+    final long positionMs;
+    final long durationMs;
+    final int queueIndex;
+    final int queueLength;
+    // Bumped on any queue or likes edit that index and length alone would not reveal.
+    final int queueRevision;
+    final boolean videoMode;
+    @Nullable final String lastError;
+    final boolean liked;
+    // SystemClock.elapsedRealtime() when the position was read.
+    final long capturedAtMs;
+
+    PlaybackState(@Nullable String title, @Nullable String artist, @Nullable String thumbnailUrl,
+                  @Nullable String videoId, boolean playing, boolean pendingPlay,
+                  long positionMs, long durationMs, int queueIndex, int queueLength, int queueRevision,
+                  boolean videoMode, @Nullable String lastError, boolean liked, long capturedAtMs) {
+        this.title = title;
+        this.artist = artist;
+        this.thumbnailUrl = thumbnailUrl;
+        this.videoId = videoId;
+        this.playing = playing;
+        this.pendingPlay = pendingPlay;
+        this.positionMs = positionMs;
+        this.durationMs = durationMs;
+        this.queueIndex = queueIndex;
+        this.queueLength = queueLength;
+        this.queueRevision = queueRevision;
+        this.videoMode = videoMode;
+        this.lastError = lastError;
+        this.liked = liked;
+        this.capturedAtMs = capturedAtMs;
+    }
+
+    /**
+     * Fields that differ from {@code previous}; every field when there is none.
+     */
+    int changesFrom(@Nullable PlaybackState previous) {
+        if (previous == null) return FIELDS_ALL;
+        int changed = 0;
+        if (!equal(title, previous.title)) changed |= FIELD_TITLE;
+        if (!equal(artist, previous.artist)) changed |= FIELD_ARTIST;
+        if (!equal(thumbnailUrl, previous.thumbnailUrl)) changed |= FIELD_THUMBNAIL;
+        if (!equal(videoId, previous.videoId)) changed |= FIELD_VIDEO_ID;
+        if (playing != previous.playing) changed |= FIELD_PLAYING;
+        if (pendingPlay != previous.pendingPlay) changed |= FIELD_PENDING_PLAY;
+        if (positionMs != previous.positionMs) changed |= FIELD_POSITION;
+        if (Math.abs(positionMs - previous.expectedPositionAt(capturedAtMs)) > SEEK_TOLERANCE_MS) {
+            changed |= FIELD_SEEK;
+        }
+        if (durationMs != previous.durationMs) changed |= FIELD_DURATION;
+        if (queueIndex != previous.queueIndex
+                || queueLength != previous.queueLength
+                || queueRevision != previous.queueRevision) {
+            changed |= FIELD_QUEUE;
+        }
+        if (videoMode != previous.videoMode) changed |= FIELD_VIDEO_MODE;
+        if (!equal(lastError, previous.lastError)) changed |= FIELD_ERROR;
+        if (liked != previous.liked) changed |= FIELD_LIKED;
+        return changed;
+    }
+
+    // Where playback would be at elapsed-realtime {@code atMs} had nothing interrupted it.
+    private long expectedPositionAt(long atMs) {
+        if (!playing) return positionMs;
+        return positionMs + Math.max(0L, atMs - capturedAtMs);
+    }
+
+    private static boolean equal(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PlaybackState{videoId=" + videoId + ", playing=" + playing
+                + ", positionMs=" + positionMs + ", queueIndex=" + queueIndex + "/" + queueLength + "}";
+    }
+}
@@ -1,7 +1,5 @@
 package com.sansoft.harmonystram;
 
-import android.content.Intent;
-
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
@@ -43,14 +41,14 @@ public class PlaybackViewModel extends ViewModel {
         ));
     }
 
-    public void updateFromBroadcast(Intent intent) {
-        if (intent == null) return;
+    void update(PlaybackState playbackState) {
+        if (playbackState == null) return;
         state.postValue(new PlaybackUiState(
-                intent.getStringExtra("title") == null ? "HarmonyStream" : intent.getStringExtra("title"),
-                intent.getStringExtra("artist") == null ? "" : intent.getStringExtra("artist"),
-                intent.getBooleanExtra("playing", false),
-                Math.max(0L, intent.getLongExtra("position_ms", 0L)),
-                Math.max(0L, intent.getLongExtra("duration_ms", 0L))
+                playbackState.title == null ? "HarmonyStream" : playbackState.title,
+                playbackState.artist == null ? "" : playbackState.artist,
+                playbackState.playing,
+                Math.max(0L, playbackState.positionMs),
+                Math.max(0L, playbackState.durationMs)
         ));
     }
 }
@@ -0,0 +1,115 @@
+package com.sansoft.harmonystram;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.source.dash.DashMediaSource;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.source.hls.HlsMediaSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.util.MimeTypes;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds the ExoPlayer source matching an extraction's {@link YouTubeStreamExtractor.StreamKind}:
+ * progressive files, HLS and DASH manifests, and DASH manifests synthesized in-process.
+ * All of them read through the same data source stack (media cache, chunker, HTTP).
+ */
+final class PlayerMediaSources {
+
+    private static final String TAG = "PlayerMediaSources";
+
+    // Live edge settings: stay a few segments behind the edge and let the player nudge its
+    // speed to hold that offset instead of rebuffering.
+    private static final long LIVE_TARGET_OFFSET_MS = 6_000L;
+    private static final long LIVE_MIN_OFFSET_MS = 3_000L;
+    private static final long LIVE_MAX_OFFSET_MS = 20_000L;
+    private static final float LIVE_MIN_SPEED = 0.97f;
+    private static final float LIVE_MAX_SPEED = 1.03f;
+
+    private final DataSource.Factory dataSourceFactory;
+    @Nullable private ProgressiveMediaSource.Factory progressiveFactory;
+    @Nullable private HlsMediaSource.Factory hlsFactory;
+    @Nullable private DashMediaSource.Factory dashFactory;
+
+    PlayerMediaSources(@NonNull DataSource.Factory dataSourceFactory) {
+        this.dataSourceFactory = dataSourceFactory;
+    }
+
+    /**
+     * @param item         carries the URI, media id and tag; its MIME type and live
+     *                     configuration are filled in here.
+     * @param dashManifest inline manifest for synthesized DASH, or null to fetch the URI.
+     */
+    @NonNull
+    MediaSource create(@NonNull MediaItem item, @NonNull YouTubeStreamExtractor.StreamKind kind,
+                       boolean live, @Nullable String dashManifest) {
+        MediaItem.Builder builder = item.buildUpon();
+        if (live) {
+            builder.setLiveConfiguration(new MediaItem.LiveConfiguration.Builder()
+                    .setTargetOffsetMs(LIVE_TARGET_OFFSET_MS)
+                    .setMinOffsetMs(LIVE_MIN_OFFSET_MS)
+                    .setMaxOffsetMs(LIVE_MAX_OFFSET_MS)
+                    .setMinPlaybackSpeed(LIVE_MIN_SPEED)
+                    .setMaxPlaybackSpeed(LIVE_MAX_SPEED)
+                    .build());
+        }
+        switch (kind) {
+            case HLS:
+                return hls().createMediaSource(builder.setMimeType(MimeTypes.APPLICATION_M3U8).build());
+            case DASH:
+                MediaItem dashItem = builder.setMimeType(MimeTypes.APPLICATION_MPD).build();
+                if (dashManifest != null) {
+                    DashManifest manifest = parseManifest(dashItem, dashManifest);
+                    if (manifest != null) return dash().createMediaSource(manifest, dashItem);
+                    // A manifest we built but cannot parse: the item's URI is the
+                    // video-only stream, so there is nothing better to fall back to.
+                    throw new IllegalStateException("Synthesized DASH manifest is not parseable");
+                }
+                return dash().createMediaSource(dashItem);
+            case PROGRESSIVE:
+            default:
+                return progressive().createMediaSource(builder.build());
+        }
+    }
+
+    @Nullable
+    private static DashManifest parseManifest(MediaItem item, String manifest) {
+        Uri uri = item.localConfiguration != null ? item.localConfiguration.uri : Uri.EMPTY;
+        try {
+            return new DashManifestParser().parse(uri,
+                    new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8)));
+        } catch (Throwable t) {
+            Log.w(TAG, "Unable to parse synthesized DASH manifest", t);
+            return null;
+        }
+    }
+
+    private ProgressiveMediaSource.Factory progressive() {
+        if (progressiveFactory == null) progressiveFactory = new ProgressiveMediaSource.Factory(dataSourceFactory);
+        return progressiveFactory;
+    }
+
+    private HlsMediaSource.Factory hls() {
+        if (hlsFactory == null) {
+            // Chunkless preparation starts from the master playlist's declared formats
+            // instead of downloading a segment of every variant first.
+            hlsFactory = new HlsMediaSource.Factory(dataSourceFactory).setAllowChunklessPreparation(true);
+        }
+        return hlsFactory;
+    }
+
+    private DashMediaSource.Factory dash() {
+        if (dashFactory == null) dashFactory = new DashMediaSource.Factory(dataSourceFactory);
+        return dashFactory;
+    }
+}
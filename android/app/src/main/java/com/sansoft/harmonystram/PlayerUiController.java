@@ -2,7 +2,6 @@ package com.sansoft.harmonystram;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.view.View;
 import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
@@ -16,10 +15,6 @@ import android.widget.LinearLayout;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-
 final class PlayerUiController {
 
     interface Actions {
@@ -231,17 +226,17 @@ final class PlayerUiController {
         updateUi("No song selected", "-", null, false, 0L, 0L, false, false);
     }
 
-    void updateFromState(@Nullable Intent stateIntent) {
-        if (stateIntent == null) return;
+    void updateFromState(@Nullable PlaybackState state) {
+        if (state == null) return;
         updateUi(
-                stateIntent.getStringExtra("title"),
-                stateIntent.getStringExtra("artist"),
-                stateIntent.getStringExtra("thumbnailUrl"),
-                stateIntent.getBooleanExtra("playing", false),
-                stateIntent.getLongExtra("position_ms", 0L),
-                stateIntent.getLongExtra("duration_ms", 0L),
-                stateIntent.getBooleanExtra("video_mode", false),
-                stateIntent.getBooleanExtra("liked", false)
+                state.title,
+                state.artist,
+                state.thumbnailUrl,
+                state.playing,
+                state.positionMs,
+                state.durationMs,
+                state.videoMode,
+                state.liked
         );
     }
 
@@ -344,24 +339,7 @@ final class PlayerUiController {
         thumb.setImageResource(R.drawable.ic_music_note);
 
         new Thread(() -> {
-            Bitmap bmp = null;
-            HttpURLConnection connection = null;
-            try {
-                URL url = new URL(normalized);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setConnectTimeout(5000);
-                connection.setReadTimeout(7000);
-                connection.setDoInput(true);
-                connection.connect();
-                try (InputStream stream = connection.getInputStream()) {
-                    bmp = BitmapFactory.decodeStream(stream);
-                }
-            } catch (Exception ignored) {
-            } finally {
-                if (connection != null) connection.disconnect();
-            }
-
-            Bitmap resolved = bmp;
+            Bitmap resolved = HttpStack.fetchBitmap(normalized);
             activity.runOnUiThread(() -> {
                 if (thumb == null || req != artworkRequestId) return;
                 if (resolved != null) {
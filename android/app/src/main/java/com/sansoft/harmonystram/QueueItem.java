@@ -0,0 +1,41 @@
+package com.sansoft.harmonystram;
+
+/**
+ * One entry of the playback queue as the web UI sent it.
+ */
+final class QueueItem {
+    final String id;
+    final String title;
+    final String artist;
+    final String videoId;
+    final String thumbnailUrl;
+
+    QueueItem(String id, String title, String artist,
+              String videoId, String thumbnailUrl) {
+        this.id           = id;
+        this.title        = title;
+        this.artist       = artist;
+        this.videoId      = videoId;
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QueueItem)) return false;
+        QueueItem other = (QueueItem) o;
+        return equal(id, other.id) && equal(title, other.title) && equal(artist, other.artist)
+                && equal(videoId, other.videoId) && equal(thumbnailUrl, other.thumbnailUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id != null ? id.hashCode() : 0;
+        result = 31 * result + (videoId != null ? videoId.hashCode() : 0);
+        return result;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
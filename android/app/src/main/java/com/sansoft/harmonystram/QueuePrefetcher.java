@@ -0,0 +1,124 @@
+package com.sansoft.harmonystram;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Resolves stream URLs for the next few queue items in the background so that
+ * skipping or auto-advancing becomes a {@link ResolvedStreamCache} hit, or joins
+ * an extraction that is already underway.
+ *
+ * <p>Every {@link #schedule} or {@link #invalidate} call starts a new generation;
+ * work queued for an older generation is dropped before it touches the network.
+ * Prefetches run on the {@link ResolverScheduler.Priority#PREFETCH} lane and give way
+ * as soon as a user-initiated play preempts them.
+ */
+final class QueuePrefetcher {
+
+    private static final String TAG = "QueuePrefetcher";
+    static final int DEFAULT_DEPTH = 2;
+
+    /**
+     * Told about every upcoming item that has a result ready, on the prefetch thread.
+     */
+    interface Listener {
+        void onPrefetched(@NonNull String videoId, boolean videoMode,
+                          @NonNull YouTubeStreamExtractor.ExtractionResult result);
+    }
+
+    private final StreamResolver resolver;
+    private final ResolverScheduler scheduler;
+
+    private volatile long generation;
+    private volatile int depth;
+    @Nullable private volatile Listener listener;
+
+    QueuePrefetcher(@NonNull StreamResolver resolver, @NonNull ResolverScheduler scheduler, int depth) {
+        this.resolver = resolver;
+        this.scheduler = scheduler;
+        this.depth = Math.max(0, depth);
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    void setDepth(int depth) {
+        this.depth = Math.max(0, depth);
+    }
+
+    void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces any pending prefetch work with the given upcoming videoIds, nearest first.
+     * Only the first {@link #getDepth()} ids are resolved.
+     */
+    void schedule(@NonNull List<String> upcomingVideoIds, final boolean videoMode) {
+        final long gen = ++generation;
+        int limit = Math.min(depth, upcomingVideoIds.size());
+        final List<String> targets = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            String videoId = upcomingVideoIds.get(i);
+            if (videoId != null && !videoId.trim().isEmpty()) targets.add(videoId.trim());
+        }
+        if (targets.isEmpty()) return;
+
+        for (final String videoId : targets) {
+            scheduler.submit(ResolverScheduler.Priority.PREFETCH, () -> prefetch(gen, videoId, videoMode));
+        }
+    }
+
+    /**
+     * Drops all queued prefetch work, e.g. because the queue or current index changed.
+     */
+    void invalidate() {
+        generation++;
+    }
+
+    void shutdown() {
+        generation++;
+    }
+
+    private void prefetch(long gen, String videoId, boolean videoMode) {
+        if (gen != generation) return;
+        long startedAtMs = System.currentTimeMillis();
+        try {
+            StreamResolver.Ticket ticket = resolver.open(videoId, videoMode);
+            if (!ticket.isLeader()) {
+                if (ticket.isDone()) {
+                    notifyPrefetched(gen, videoId, videoMode, ticket.await(1));
+                    return;
+                }
+                // Someone else is resolving it; nothing to wait for here.
+                ticket.cancel();
+                return;
+            }
+            ResolverScheduler.Job job = ResolverScheduler.currentJob();
+            if (job != null) job.setOnCancel(ticket::cancel);
+            YouTubeStreamExtractor.ExtractionResult result = ticket.await(1);
+            notifyPrefetched(gen, videoId, videoMode, result);
+            Log.d(TAG, "Prefetched videoId=" + videoId
+                    + " mode=" + (videoMode ? "video" : "audio")
+                    + " tookMs=" + (System.currentTimeMillis() - startedAtMs)
+                    + (gen != generation ? " (superseded)" : ""));
+        } catch (CancellationException preempted) {
+            Log.d(TAG, "Prefetch preempted for videoId=" + videoId);
+        } catch (Throwable t) {
+            Log.w(TAG, "Prefetch failed for videoId=" + videoId, t);
+        }
+    }
+
+    private void notifyPrefetched(long gen, String videoId, boolean videoMode,
+                                  YouTubeStreamExtractor.ExtractionResult result) {
+        Listener current = listener;
+        if (current != null && gen == generation) current.onPrefetched(videoId, videoMode, result);
+    }
+}
@@ -0,0 +1,418 @@
+package com.sansoft.harmonystram;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented playback queue sized for imported playlists of 10k-100k entries.
+ *
+ * <p>Video ids are interned into int handles, and an entry stores its item id and thumbnail
+ * URL only when they differ from the video id and its default thumbnail; artists are shared
+ * between entries. Bulk inserts, moves and removals shift each column with one arraycopy. A
+ * videoId-to-positions index is rebuilt lazily on the first lookup after an edit, so repeated
+ * lookups between edits are O(1). {@link QueueItem}s are only created on {@link #get}. Not
+ * thread-safe.
+ */
+final class QueueStore {
+
+    private static final int NO_POSITION = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Interned video ids: a handle indexes handleVideoIds.
+    private final Map<String, Integer> handles = new HashMap<>();
+    private String[] handleVideoIds = new String[INITIAL_CAPACITY];
+    private int handleCount;
+    private final Map<String, String> sharedArtists = new HashMap<>();
+
+    // Columns, one slot per queue position. A null id or thumbnail means the derived default.
+    private int size;
+    private int[] videoHandles = new int[INITIAL_CAPACITY];
+    private String[] titles = new String[INITIAL_CAPACITY];
+    private String[] artists = new String[INITIAL_CAPACITY];
+    private String[] itemIds = new String[INITIAL_CAPACITY];
+    private String[] thumbnails = new String[INITIAL_CAPACITY];
+
+    // Lazy index: first position per handle, then the next position with the same handle.
+    private boolean indexValid;
+    private int[] firstPositions = new int[0];
+    private int[] nextPositions = new int[0];
+
+    /**
+     * The thumbnail the web UI falls back to for {@code videoId}, or "" without one.
+     */
+    @NonNull
+    static String defaultThumbnailUrl(@Nullable String videoId) {
+        if (videoId == null || videoId.trim().isEmpty()) return "";
+        return "https://i.ytimg.com/vi/" + videoId.trim() + "/hqdefault.jpg";
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @NonNull
+    QueueItem get(int position) {
+        checkPosition(position);
+        String videoId = handleVideoIds[videoHandles[position]];
+        return new QueueItem(
+                itemIds[position] != null ? itemIds[position] : videoId,
+                titles[position],
+                artists[position],
+                videoId,
+                thumbnails[position] != null ? thumbnails[position] : defaultThumbnailUrl(videoId));
+    }
+
+    /**
+     * Video id at {@code position} without materializing the entry.
+     */
+    @NonNull
+    String videoIdAt(int position) {
+        checkPosition(position);
+        return handleVideoIds[videoHandles[position]];
+    }
+
+    /**
+     * First position holding {@code videoId}, or -1.
+     */
+    int indexOf(@Nullable String videoId) {
+        Integer handle = videoId == null ? null : handles.get(videoId);
+        if (handle == null) return NO_POSITION;
+        ensureIndex();
+        return firstPositions[handle];
+    }
+
+    /**
+     * Every position holding {@code videoId}, in queue order.
+     */
+    @NonNull
+    int[] positionsOf(@Nullable String videoId) {
+        int position = indexOf(videoId);
+        if (position == NO_POSITION) return new int[0];
+        int count = 0;
+        for (int p = position; p != NO_POSITION; p = nextPositions[p]) count++;
+        int[] positions = new int[count];
+        count = 0;
+        for (int p = position; p != NO_POSITION; p = nextPositions[p]) positions[count++] = p;
+        return positions;
+    }
+
+    /**
+     * Whether the entry at {@code position} stores the same columns {@code item} would.
+     */
+    boolean matches(int position, @NonNull QueueItem item) {
+        checkPosition(position);
+        String videoId = item.videoId == null ? "" : item.videoId;
+        Integer handle = handles.get(videoId);
+        return handle != null && handle == videoHandles[position]
+                && titles[position].equals(item.title == null ? "" : item.title)
+                && artists[position].equals(item.artist == null ? "" : item.artist)
+                && equal(itemIds[position], idColumn(item.id, videoId))
+                && equal(thumbnails[position], thumbnailColumn(item.thumbnailUrl, videoId));
+    }
+
+    /**
+     * Receives the bulk edits {@link #editTo} makes, in the order it makes them.
+     */
+    interface EditListener {
+        void onInsert(int index, @NonNull List<QueueItem> items);
+
+        void onRemove(int from, int count);
+
+        void onMove(int from, int count, int to);
+    }
+
+    /**
+     * Turns this queue into {@code target} with at most two bulk edits around the common
+     * prefix and suffix: an insert, a removal, a block move, or a removal plus an insert.
+     * Returns false, without editing, when the edits would insert more than half of
+     * {@code target} and replacing the queue outright is as cheap.
+     */
+    boolean editTo(@NonNull List<QueueItem> target, @NonNull EditListener listener) {
+        int targetSize = target.size();
+        int prefix = 0;
+        while (prefix < size && prefix < targetSize && matches(prefix, target.get(prefix))) prefix++;
+        int suffix = 0;
+        while (suffix < Math.min(size, targetSize) - prefix
+                && matches(size - 1 - suffix, target.get(targetSize - 1 - suffix))) {
+            suffix++;
+        }
+        int removed = size - prefix - suffix;
+        int inserted = targetSize - prefix - suffix;
+        if (removed == 0 && inserted == 0) return true;
+
+        if (removed == inserted) {
+            int split = rotationSplit(prefix, removed, target);
+            if (split > 0) {
+                // Old middle is A+B, new middle is B+A: move whichever block is shorter.
+                if (split <= removed - split) {
+                    move(prefix, split, prefix + removed - split);
+                    listener.onMove(prefix, split, prefix + removed - split);
+                } else {
+                    move(prefix + split, removed - split, prefix);
+                    listener.onMove(prefix + split, removed - split, prefix);
+                }
+                return true;
+            }
+        }
+        if (inserted > 0 && 2 * inserted > targetSize) return false;
+        if (removed > 0) {
+            remove(prefix, removed);
+            listener.onRemove(prefix, removed);
+        }
+        if (inserted > 0) {
+            List<QueueItem> items = target.subList(prefix, prefix + inserted);
+            insert(prefix, items);
+            listener.onInsert(prefix, items);
+        }
+        return true;
+    }
+
+    // Split point k such that [from, from+count) holds A+B with |A| = k and target holds
+    // B+A at from, or 0 when the middles are not rotations of each other.
+    private int rotationSplit(int from, int count, List<QueueItem> target) {
+        QueueItem first = target.get(from);
+        for (int position : positionsOf(first.videoId)) {
+            int split = position - from;
+            if (split <= 0 || split >= count) continue;
+            boolean rotated = true;
+            for (int i = 0; i < count && rotated; i++) {
+                rotated = matches(from + (split + i) % count, target.get(from + i));
+            }
+            if (rotated) return split;
+        }
+        return 0;
+    }
+
+    void clear() {
+        Arrays.fill(titles, 0, size, null);
+        Arrays.fill(artists, 0, size, null);
+        Arrays.fill(itemIds, 0, size, null);
+        Arrays.fill(thumbnails, 0, size, null);
+        Arrays.fill(handleVideoIds, 0, handleCount, null);
+        size = 0;
+        handleCount = 0;
+        handles.clear();
+        sharedArtists.clear();
+        indexValid = false;
+    }
+
+    void add(@NonNull QueueItem item) {
+        ensureCapacity(size + 1);
+        set(size++, item.id, item.title, item.artist, item.videoId, item.thumbnailUrl);
+        indexValid = false;
+    }
+
+    void addAll(@NonNull List<QueueItem> items) {
+        insert(size, items);
+    }
+
+    /**
+     * Inserts {@code items} before {@code index}, shifting the tail once for the whole batch.
+     * A {@link #asList} view of another store is copied column by column.
+     */
+    void insert(int index, @NonNull List<QueueItem> items) {
+        if (index < 0 || index > size) throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        int count = items.size();
+        if (count == 0) return;
+        QueueStore source = items instanceof View ? ((View) items).store() : null;
+        if (source == this) {
+            insert(index, new ArrayList<>(items));
+            return;
+        }
+        ensureCapacity(size + count);
+        shift(index, index + count, size - index);
+        for (int i = 0; i < count; i++) {
+            if (source != null) {
+                source.checkPosition(i);
+                set(index + i, source.itemIds[i], source.titles[i], source.artists[i],
+                        source.handleVideoIds[source.videoHandles[i]], source.thumbnails[i]);
+            } else {
+                QueueItem item = items.get(i);
+                set(index + i, item.id, item.title, item.artist, item.videoId, item.thumbnailUrl);
+            }
+        }
+        size += count;
+        indexValid = false;
+    }
+
+    void remove(int from, int count) {
+        if (count == 0) return;
+        checkRange(from, count);
+        shift(from + count, from, size - from - count);
+        int oldSize = size;
+        size -= count;
+        Arrays.fill(titles, size, oldSize, null);
+        Arrays.fill(artists, size, oldSize, null);
+        Arrays.fill(itemIds, size, oldSize, null);
+        Arrays.fill(thumbnails, size, oldSize, null);
+        indexValid = false;
+        if (handleCount > 2 * size + INITIAL_CAPACITY) compactHandles();
+    }
+
+    /**
+     * Moves the {@code count} entries at {@code from} so that they start at {@code to} once
+     * moved; {@code to} is a position in the resulting queue.
+     */
+    void move(int from, int count, int to) {
+        checkRange(from, count);
+        checkRange(to, count);
+        if (count == 0 || from == to) return;
+        int[] movedHandles = Arrays.copyOfRange(videoHandles, from, from + count);
+        String[] movedTitles = Arrays.copyOfRange(titles, from, from + count);
+        String[] movedArtists = Arrays.copyOfRange(artists, from, from + count);
+        String[] movedIds = Arrays.copyOfRange(itemIds, from, from + count);
+        String[] movedThumbnails = Arrays.copyOfRange(thumbnails, from, from + count);
+        if (to < from) {
+            shift(to, to + count, from - to);
+        } else {
+            shift(from + count, from, to - from);
+        }
+        System.arraycopy(movedHandles, 0, videoHandles, to, count);
+        System.arraycopy(movedTitles, 0, titles, to, count);
+        System.arraycopy(movedArtists, 0, artists, to, count);
+        System.arraycopy(movedIds, 0, itemIds, to, count);
+        System.arraycopy(movedThumbnails, 0, thumbnails, to, count);
+        indexValid = false;
+    }
+
+    /**
+     * Read-only live view; entries are materialized as they are read.
+     */
+    @NonNull
+    List<QueueItem> asList() {
+        return new View();
+    }
+
+    private final class View extends AbstractList<QueueItem> {
+        QueueStore store() {
+            return QueueStore.this;
+        }
+
+        @Override
+        public QueueItem get(int index) {
+            return QueueStore.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Storage
+    // -------------------------------------------------------------------------
+    private void set(int position, @Nullable String id, @Nullable String title, @Nullable String artist,
+                     @Nullable String videoId, @Nullable String thumbnailUrl) {
+        String vid = videoId == null ? "" : videoId;
+        videoHandles[position] = intern(vid);
+        titles[position] = title == null ? "" : title;
+        artists[position] = share(artist == null ? "" : artist);
+        itemIds[position] = idColumn(id, vid);
+        thumbnails[position] = thumbnailColumn(thumbnailUrl, vid);
+    }
+
+    // The stored id and thumbnail: null when they are the video id's defaults.
+    @Nullable
+    private static String idColumn(@Nullable String id, String videoId) {
+        return id == null || id.equals(videoId) ? null : id;
+    }
+
+    @Nullable
+    private static String thumbnailColumn(@Nullable String thumbnailUrl, String videoId) {
+        return thumbnailUrl == null || thumbnailUrl.isEmpty()
+                || thumbnailUrl.equals(defaultThumbnailUrl(videoId)) ? null : thumbnailUrl;
+    }
+
+    private static boolean equal(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private int intern(String videoId) {
+        Integer handle = handles.get(videoId);
+        if (handle != null) return handle;
+        if (handleCount == handleVideoIds.length) {
+            handleVideoIds = Arrays.copyOf(handleVideoIds, handleCount * 2);
+        }
+        handleVideoIds[handleCount] = videoId;
+        handles.put(videoId, handleCount);
+        return handleCount++;
+    }
+
+    private String share(String artist) {
+        String shared = sharedArtists.get(artist);
+        if (shared != null) return shared;
+        sharedArtists.put(artist, artist);
+        return artist;
+    }
+
+    // Drops handles and shared artists no longer referenced after large removals.
+    private void compactHandles() {
+        String[] videoIds = new String[size];
+        for (int i = 0; i < size; i++) videoIds[i] = handleVideoIds[videoHandles[i]];
+        Arrays.fill(handleVideoIds, 0, handleCount, null);
+        handleCount = 0;
+        handles.clear();
+        sharedArtists.clear();
+        for (int i = 0; i < size; i++) {
+            videoHandles[i] = intern(videoIds[i]);
+            artists[i] = share(artists[i]);
+        }
+        indexValid = false;
+    }
+
+    private void shift(int from, int to, int count) {
+        if (count <= 0) return;
+        System.arraycopy(videoHandles, from, videoHandles, to, count);
+        System.arraycopy(titles, from, titles, to, count);
+        System.arraycopy(artists, from, artists, to, count);
+        System.arraycopy(itemIds, from, itemIds, to, count);
+        System.arraycopy(thumbnails, from, thumbnails, to, count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= videoHandles.length) return;
+        int grown = Math.max(capacity, videoHandles.length + (videoHandles.length >> 1));
+        videoHandles = Arrays.copyOf(videoHandles, grown);
+        titles = Arrays.copyOf(titles, grown);
+        artists = Arrays.copyOf(artists, grown);
+        itemIds = Arrays.copyOf(itemIds, grown);
+        thumbnails = Arrays.copyOf(thumbnails, grown);
+    }
+
+    private void ensureIndex() {
+        if (indexValid) return;
+        if (firstPositions.length < handleCount) firstPositions = new int[handleVideoIds.length];
+        if (nextPositions.length < size) nextPositions = new int[videoHandles.length];
+        Arrays.fill(firstPositions, 0, handleCount, NO_POSITION);
+        for (int i = size - 1; i >= 0; i--) {
+            int handle = videoHandles[i];
+            nextPositions[i] = firstPositions[handle];
+            firstPositions[handle] = i;
+        }
+        indexValid = true;
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + size);
+        }
+    }
+
+    private void checkRange(int from, int count) {
+        if (from < 0 || count < 0 || from + count > size) {
+            throw new IndexOutOfBoundsException("range " + from + "+" + count + ", size " + size);
+        }
+    }
+}
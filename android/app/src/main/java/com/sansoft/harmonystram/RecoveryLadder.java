@@ -0,0 +1,99 @@
+package com.sansoft.harmonystram;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Picks the next recovery step after a player error on the current track, cheapest first.
+ *
+ * <p>A transient 403 or connection reset usually clears by re-preparing the same URL from
+ * the current position; a URL that keeps failing is swapped for the next ranked candidate
+ * of the same extraction; only when those run out is the track extracted again. Each rung
+ * has its own budget. The ladder starts over for a new track, when the user starts a track,
+ * or once the track has actually been playing for {@link #STABLE_PLAYBACK_MS} since the
+ * previous failure. Clean playback is wall time spent playing, fed through
+ * {@link #onPlayingChanged}; seeks and buffering do not count towards it.
+ */
+final class RecoveryLadder {
+
+    enum Rung { RETRY_SAME, FAILOVER, RE_EXTRACT, GIVE_UP }
+
+    static final long STABLE_PLAYBACK_MS = 20_000L;
+    private static final long NOT_PLAYING = -1L;
+
+    private final int retryBudget;
+    private final int failoverBudget;
+    private final int reExtractBudget;
+
+    @Nullable private String videoId;
+    // Playing time since the last failure, plus the open stretch when playing.
+    private long cleanPlaybackMs;
+    private long playingSinceMs = NOT_PLAYING;
+    private int retries;
+    private int failovers;
+    private int reExtracts;
+
+    RecoveryLadder(int retryBudget, int failoverBudget, int reExtractBudget) {
+        this.retryBudget = retryBudget;
+        this.failoverBudget = failoverBudget;
+        this.reExtractBudget = reExtractBudget;
+    }
+
+    /**
+     * Tracks whether the player is ready and playing; {@code nowMs} is
+     * {@code SystemClock.elapsedRealtime()}.
+     */
+    void onPlayingChanged(boolean playing, long nowMs) {
+        if (playing) {
+            if (playingSinceMs == NOT_PLAYING) playingSinceMs = nowMs;
+        } else if (playingSinceMs != NOT_PLAYING) {
+            cleanPlaybackMs += Math.max(0L, nowMs - playingSinceMs);
+            playingSinceMs = NOT_PLAYING;
+        }
+    }
+
+    /**
+     * Records a failure at {@code nowMs} (elapsedRealtime) and returns the rung to try.
+     * Retrying the same URL only helps for I/O errors; decoder and parser failures go
+     * straight to failover.
+     */
+    @NonNull
+    Rung next(@NonNull String videoId, long nowMs, boolean ioError, boolean hasFallback) {
+        long clean = cleanPlaybackMs
+                + (playingSinceMs == NOT_PLAYING ? 0L : Math.max(0L, nowMs - playingSinceMs));
+        if (!videoId.equals(this.videoId) || clean >= STABLE_PLAYBACK_MS) {
+            reset();
+            this.videoId = videoId;
+        }
+        cleanPlaybackMs = 0L;
+        if (playingSinceMs != NOT_PLAYING) playingSinceMs = nowMs;
+
+        if (ioError && retries < retryBudget) {
+            retries++;
+            return Rung.RETRY_SAME;
+        }
+        // A new source gets a fresh retry budget.
+        if (hasFallback && failovers < failoverBudget) {
+            failovers++;
+            retries = 0;
+            return Rung.FAILOVER;
+        }
+        if (reExtracts < reExtractBudget) {
+            reExtracts++;
+            retries = 0;
+            return Rung.RE_EXTRACT;
+        }
+        return Rung.GIVE_UP;
+    }
+
+    /**
+     * Starts over with full budgets, e.g. because the user started a track.
+     */
+    void reset() {
+        videoId = null;
+        cleanPlaybackMs = 0L;
+        retries = 0;
+        failovers = 0;
+        reExtracts = 0;
+    }
+}
@@ -0,0 +1,349 @@
+package com.sansoft.harmonystram;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Bounded LRU cache of extraction results keyed by videoId and playback mode.
+ * Entries live until the signed URL's own {@code expire=} timestamp and are mirrored
+ * to a small binary file so repeat plays survive process death. Each entry records the
+ * {@link NetworkPolicy#strictness()} it was resolved under, so a tighter policy can drop
+ * streams picked for a looser one.
+ */
+final class ResolvedStreamCache {
+
+    private static final String TAG = "ResolvedStreamCache";
+    static final int DEFAULT_MAX_ENTRIES = 64;
+    // URLs that expire within this window are treated as already expired so playback
+    // does not start on a URL the CDN is about to reject.
+    static final long EXPIRY_SAFETY_MARGIN_MS = 2 * 60 * 1000L;
+    // Used when none of the URLs carries an expire= parameter (direct/non-YouTube streams).
+    static final long DEFAULT_TTL_MS = 5 * 60 * 1000L;
+    private static final int FILE_FORMAT_VERSION = 4;
+
+    static final class Entry {
+        final YouTubeStreamExtractor.ExtractionResult result;
+        final long expiresAtMs;
+        final int policyStrictness;
+
+        Entry(YouTubeStreamExtractor.ExtractionResult result, long expiresAtMs, int policyStrictness) {
+            this.result = result;
+            this.expiresAtMs = expiresAtMs;
+            this.policyStrictness = policyStrictness;
+        }
+    }
+
+    private final File file;
+    private final Executor ioExecutor;
+    private final LinkedHashMap<String, Entry> entries;
+    private volatile int policyStrictness;
+
+    ResolvedStreamCache(File file, final int maxEntries, Executor ioExecutor) {
+        this.file = file;
+        this.ioExecutor = ioExecutor;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a still-valid result for the given video and mode, or {@code null}.
+     */
+    @Nullable
+    synchronized YouTubeStreamExtractor.ExtractionResult get(@Nullable String videoId, boolean videoMode) {
+        String key = key(videoId, videoMode);
+        if (key == null) return null;
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (isExpired(entry, System.currentTimeMillis())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    /**
+     * Expiry of the cached result in wall-clock millis, or 0 when nothing valid is cached.
+     */
+    synchronized long expiresAtMs(@Nullable String videoId, boolean videoMode) {
+        String key = key(videoId, videoMode);
+        Entry entry = key == null ? null : entries.get(key);
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) return 0L;
+        return entry.expiresAtMs;
+    }
+
+    void put(@Nullable String videoId, boolean videoMode,
+             @Nullable YouTubeStreamExtractor.ExtractionResult result) {
+        put(videoId, videoMode, result, policyStrictness);
+    }
+
+    /**
+     * Caches {@code result} as resolved under {@code policyStrictness}; a result resolved
+     * under a looser policy than the current one is dropped.
+     */
+    void put(@Nullable String videoId, boolean videoMode,
+             @Nullable YouTubeStreamExtractor.ExtractionResult result, int policyStrictness) {
+        String key = key(videoId, videoMode);
+        if (key == null || result == null || result.streamUrl == null) return;
+        long expiresAtMs = resolveExpiryMs(result, System.currentTimeMillis());
+        synchronized (this) {
+            if (policyStrictness < this.policyStrictness) return;
+            entries.put(key, new Entry(result, expiresAtMs, policyStrictness));
+        }
+        persistAsync();
+    }
+
+    int policyStrictness() {
+        return policyStrictness;
+    }
+
+    /**
+     * Switches to {@code strictness} and evicts entries resolved under a looser policy.
+     * Returns true when it tightened the policy.
+     */
+    boolean setPolicyStrictness(int strictness) {
+        boolean removed = false;
+        boolean tightened;
+        synchronized (this) {
+            tightened = strictness > policyStrictness;
+            policyStrictness = strictness;
+            if (tightened) {
+                Iterator<Entry> it = entries.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().policyStrictness < strictness) {
+                        it.remove();
+                        removed = true;
+                    }
+                }
+            }
+        }
+        if (removed) persistAsync();
+        return tightened;
+    }
+
+    /**
+     * Drops both audio and video entries for a video, e.g. after the CDN rejected its URL.
+     */
+    void invalidate(@Nullable String videoId) {
+        boolean removed;
+        synchronized (this) {
+            removed = entries.remove(key(videoId, false)) != null;
+            removed |= entries.remove(key(videoId, true)) != null;
+        }
+        if (removed) persistAsync();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    void loadAsync() {
+        ioExecutor.execute(this::load);
+    }
+
+    // -------------------------------------------------------------------------
+    // Expiry
+    // -------------------------------------------------------------------------
+    private static boolean isExpired(Entry entry, long nowMs) {
+        return entry.expiresAtMs - EXPIRY_SAFETY_MARGIN_MS <= nowMs;
+    }
+
+    static long resolveExpiryMs(YouTubeStreamExtractor.ExtractionResult result, long nowMs) {
+        long expiry = earliest(0L, parseExpiryMs(result.streamUrl));
+        expiry = earliest(expiry, parseExpiryMs(result.audioStreamUrl));
+        expiry = earliest(expiry, parseExpiryMs(result.videoStreamUrl));
+        return expiry > 0L ? expiry : nowMs + DEFAULT_TTL_MS;
+    }
+
+    /**
+     * Whether {@code url}, resolved at {@code resolvedAtMs}, can still be handed to the
+     * player: its signed expiry, or the default TTL when unsigned, is beyond the margin.
+     */
+    static boolean isStillValid(@Nullable String url, long resolvedAtMs, long nowMs) {
+        if (url == null || url.isEmpty() || resolvedAtMs <= 0L) return false;
+        long expiry = parseExpiryMs(url);
+        if (expiry <= 0L) expiry = resolvedAtMs + DEFAULT_TTL_MS;
+        return expiry - EXPIRY_SAFETY_MARGIN_MS > nowMs;
+    }
+
+    private static long earliest(long current, long candidate) {
+        if (candidate <= 0L) return current;
+        if (current <= 0L) return candidate;
+        return Math.min(current, candidate);
+    }
+
+    /**
+     * Reads the {@code expire=} query parameter (unix seconds) of a signed googlevideo URL.
+     * Returns 0 when the URL has no usable expiry.
+     */
+    static long parseExpiryMs(@Nullable String url) {
+        if (url == null) return 0L;
+        int start = url.indexOf("expire=");
+        while (start > 0) {
+            char prev = url.charAt(start - 1);
+            if (prev == '?' || prev == '&' || prev == '/') break;
+            start = url.indexOf("expire=", start + 1);
+        }
+        if (start <= 0) return 0L;
+        int valueStart = start + "expire=".length();
+        int valueEnd = valueStart;
+        while (valueEnd < url.length() && Character.isDigit(url.charAt(valueEnd))) valueEnd++;
+        if (valueEnd == valueStart) return 0L;
+        try {
+            return Long.parseLong(url.substring(valueStart, valueEnd)) * 1000L;
+        } catch (NumberFormatException ignored) {
+            return 0L;
+        }
+    }
+
+    @Nullable
+    private static String key(@Nullable String videoId, boolean videoMode) {
+        if (videoId == null) return null;
+        String trimmed = videoId.trim();
+        if (trimmed.isEmpty()) return null;
+        return (videoMode ? "v:" : "a:") + trimmed;
+    }
+
+    // -------------------------------------------------------------------------
+    // Persistence
+    // -------------------------------------------------------------------------
+    private void persistAsync() {
+        ioExecutor.execute(this::persist);
+    }
+
+    private void persist() {
+        List<Map.Entry<String, Entry>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        long nowMs = System.currentTimeMillis();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            int live = 0;
+            for (Map.Entry<String, Entry> e : snapshot) {
+                if (!isExpired(e.getValue(), nowMs)) live++;
+            }
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeInt(live);
+            // Eldest first, so reloading in file order restores the LRU order.
+            for (Map.Entry<String, Entry> e : snapshot) {
+                Entry entry = e.getValue();
+                if (isExpired(entry, nowMs)) continue;
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.expiresAtMs);
+                out.writeInt(entry.policyStrictness);
+                out.writeUTF(entry.result.streamUrl);
+                writeNullable(out, entry.result.audioStreamUrl);
+                writeNullable(out, entry.result.videoStreamUrl);
+                out.writeUTF(entry.result.kind.name());
+                out.writeBoolean(entry.result.live);
+                writeNullableLong(out, entry.result.dashManifest);
+                out.writeInt(entry.result.fallbackUrls.size());
+                for (String url : entry.result.fallbackUrls) out.writeUTF(url);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not persist resolved stream cache", e);
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.w(TAG, "Could not replace resolved stream cache file");
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        long nowMs = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_FORMAT_VERSION) return;
+            int count = in.readInt();
+            LinkedHashMap<String, Entry> loaded = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long expiresAtMs = in.readLong();
+                int strictness = in.readInt();
+                String streamUrl = in.readUTF();
+                String audio = readNullable(in);
+                String video = readNullable(in);
+                YouTubeStreamExtractor.StreamKind kind = YouTubeStreamExtractor.StreamKind.valueOf(in.readUTF());
+                boolean live = in.readBoolean();
+                String manifest = readNullableLong(in);
+                int fallbackCount = in.readInt();
+                List<String> fallbacks = new ArrayList<>(Math.max(0, fallbackCount));
+                for (int f = 0; f < fallbackCount; f++) fallbacks.add(in.readUTF());
+                Entry entry = new Entry(
+                        new YouTubeStreamExtractor.ExtractionResult(streamUrl, audio, video, kind, live, manifest,
+                                fallbacks),
+                        expiresAtMs, strictness);
+                if (!isExpired(entry, nowMs)) loaded.put(key, entry);
+            }
+            synchronized (this) {
+                // Anything resolved while loading is fresher than the file, so it goes
+                // in last: it wins on key clashes and stays most-recently-used.
+                LinkedHashMap<String, Entry> fresh = new LinkedHashMap<>(entries);
+                entries.clear();
+                for (Map.Entry<String, Entry> e : loaded.entrySet()) {
+                    if (e.getValue().policyStrictness >= policyStrictness) entries.put(e.getKey(), e.getValue());
+                }
+                entries.putAll(fresh);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Discarding unreadable resolved stream cache", e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    @Nullable
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // writeUTF caps at 64 KB; manifests are written as length-prefixed UTF-8 instead.
+    private static void writeNullableLong(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readNullableLong(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,249 @@
+package com.sansoft.harmonystram;
+
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs resolver, artwork and cache work in separate priority lanes.
+ *
+ * <p>Each {@link Priority} has its own bounded set of threads, so a prefetch or a slow
+ * artwork download can never sit in front of the request the user is waiting on.
+ * Prefetch work is additionally preemptible: {@link #preemptBelow(Priority)} drops queued
+ * prefetch jobs and cancels running ones through their {@link Job#setOnCancel} hook.
+ * Hedged work waits on a timer rather than a lane thread, then runs on its own small lane
+ * (see {@link #submitDelayed}).
+ */
+final class ResolverScheduler {
+
+    private static final String TAG = "ResolverScheduler";
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 30L;
+    private static final int HEDGE_PARALLELISM = 2;
+
+    enum Priority {
+        USER_PLAY(2, Process.THREAD_PRIORITY_DEFAULT, false),
+        ERROR_RECOVERY(1, Process.THREAD_PRIORITY_DEFAULT, false),
+        PREFETCH(2, Process.THREAD_PRIORITY_BACKGROUND, true),
+        // Artwork, cache persistence, warmup: yields by running on its own low-priority lane.
+        BACKGROUND(1, Process.THREAD_PRIORITY_BACKGROUND, false);
+
+        final int parallelism;
+        final int threadPriority;
+        final boolean preemptible;
+
+        Priority(int parallelism, int threadPriority, boolean preemptible) {
+            this.parallelism = parallelism;
+            this.threadPriority = threadPriority;
+            this.preemptible = preemptible;
+        }
+    }
+
+    private static final ThreadLocal<Job> CURRENT_JOB = new ThreadLocal<>();
+
+    private final Map<Priority, ThreadPoolExecutor> lanes = new EnumMap<>(Priority.class);
+    private final Set<Job> preemptibleJobs = new HashSet<>();
+    private final ScheduledThreadPoolExecutor timer;
+    private final ThreadPoolExecutor hedgeLane;
+
+    ResolverScheduler() {
+        for (Priority priority : Priority.values()) {
+            lanes.put(priority, newLane(priority.parallelism,
+                    threadFactory(priority.name(), priority.threadPriority)));
+        }
+        hedgeLane = newLane(HEDGE_PARALLELISM, threadFactory("hedge", Process.THREAD_PRIORITY_DEFAULT));
+        timer = new ScheduledThreadPoolExecutor(1, threadFactory("timer", Process.THREAD_PRIORITY_DEFAULT));
+        timer.setKeepAliveTime(IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    private static ThreadPoolExecutor newLane(int parallelism, ThreadFactory threadFactory) {
+        ThreadPoolExecutor lane = new ThreadPoolExecutor(parallelism, parallelism,
+                IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        lane.allowCoreThreadTimeOut(true);
+        return lane;
+    }
+
+    /**
+     * The job running on the calling thread, or {@code null} outside the scheduler.
+     */
+    @Nullable
+    static Job currentJob() {
+        return CURRENT_JOB.get();
+    }
+
+    @NonNull
+    Job submit(@NonNull Priority priority, @NonNull Runnable task) {
+        Job job = new Job(priority, task);
+        if (priority.preemptible) {
+            synchronized (preemptibleJobs) {
+                preemptibleJobs.add(job);
+            }
+        }
+        lanes.get(priority).execute(job);
+        return job;
+    }
+
+    /**
+     * Runs {@code task} on the hedge lane once {@code delayMs} has passed, unless the job is
+     * cancelled first. Nothing holds a thread while the delay runs. The job belongs to
+     * {@code priority}, so a prefetch hedge is preempted along with its prefetch.
+     */
+    @NonNull
+    Job submitDelayed(@NonNull Priority priority, long delayMs, @NonNull Runnable task) {
+        final Job job = new Job(priority, task);
+        if (priority.preemptible) {
+            synchronized (preemptibleJobs) {
+                preemptibleJobs.add(job);
+            }
+        }
+        final ScheduledFuture<?> pending =
+                timer.schedule(() -> hedgeLane.execute(job), delayMs, TimeUnit.MILLISECONDS);
+        job.setOnCancel(() -> {
+            if (pending.cancel(false)) job.forget();
+        });
+        return job;
+    }
+
+    /**
+     * Executor view of one lane, for components that only take an {@link Executor}.
+     */
+    @NonNull
+    Executor executor(@NonNull final Priority priority) {
+        return task -> submit(priority, task);
+    }
+
+    /**
+     * Cancels every preemptible job of a lower priority than {@code priority}, queued or
+     * running. Returns the number of jobs cancelled.
+     */
+    int preemptBelow(@NonNull Priority priority) {
+        List<Job> victims = new ArrayList<>();
+        synchronized (preemptibleJobs) {
+            for (Job job : preemptibleJobs) {
+                if (job.priority.ordinal() > priority.ordinal()) victims.add(job);
+            }
+            preemptibleJobs.removeAll(victims);
+        }
+        for (Job job : victims) {
+            job.cancel();
+        }
+        if (!victims.isEmpty()) {
+            Log.d(TAG, "Preempted " + victims.size() + " job(s) for " + priority);
+        }
+        return victims.size();
+    }
+
+    void shutdown() {
+        for (ThreadPoolExecutor lane : lanes.values()) {
+            lane.shutdownNow();
+        }
+        timer.shutdownNow();
+        hedgeLane.shutdownNow();
+    }
+
+    private static ThreadFactory threadFactory(String lane, final int threadPriority) {
+        final AtomicInteger count = new AtomicInteger();
+        final String name = "resolver-" + lane.toLowerCase(Locale.US) + "-";
+        return runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(threadPriority);
+                runnable.run();
+            }, name + count.incrementAndGet());
+            if (threadPriority == Process.THREAD_PRIORITY_BACKGROUND) {
+                thread.setPriority(Thread.MIN_PRIORITY);
+            }
+            return thread;
+        };
+    }
+
+    // -------------------------------------------------------------------------
+    // Job
+    // -------------------------------------------------------------------------
+    final class Job implements Runnable {
+        final Priority priority;
+        private final Runnable task;
+        private volatile boolean cancelled;
+        @Nullable private Runnable onCancel;
+
+        Job(Priority priority, Runnable task) {
+            this.priority = priority;
+            this.task = task;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Registers the hook that aborts this job's work once it is cancelled. Runs the
+         * hook immediately when the job has already been cancelled.
+         */
+        void setOnCancel(@Nullable Runnable hook) {
+            synchronized (this) {
+                if (!cancelled) {
+                    onCancel = hook;
+                    return;
+                }
+            }
+            if (hook != null) hook.run();
+        }
+
+        void cancel() {
+            Runnable hook;
+            synchronized (this) {
+                if (cancelled) return;
+                cancelled = true;
+                hook = onCancel;
+                onCancel = null;
+            }
+            if (hook != null) hook.run();
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                forget();
+                return;
+            }
+            Job previous = CURRENT_JOB.get();
+            CURRENT_JOB.set(this);
+            try {
+                task.run();
+            } catch (Throwable t) {
+                Log.w(TAG, "Uncaught failure in " + priority + " job", t);
+            } finally {
+                CURRENT_JOB.set(previous);
+                synchronized (this) {
+                    onCancel = null;
+                }
+                forget();
+            }
+        }
+
+        private void forget() {
+            if (!priority.preemptible) return;
+            synchronized (preemptibleJobs) {
+                preemptibleJobs.remove(this);
+            }
+        }
+    }
+}
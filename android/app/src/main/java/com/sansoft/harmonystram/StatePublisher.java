@@ -0,0 +1,130 @@
+package com.sansoft.harmonystram;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns the latest {@link PlaybackState} and fans its changes out to subscribers.
+ *
+ * <p>Each subscriber names the fields it renders, a minimum interval between deliveries,
+ * and the fields urgent enough to skip that interval. Changes are never delivered inline:
+ * a burst of publishes in one main-loop turn reaches every subscriber once, with the
+ * latest state and the union of what changed. Publish and delivery both run on the
+ * scheduler's thread.
+ */
+final class StatePublisher {
+
+    interface Subscriber {
+        void onStateChanged(@NonNull PlaybackState state, int changedFields);
+    }
+
+    interface Scheduler {
+        long uptimeMs();
+        void postDelayed(@NonNull Runnable task, long delayMs);
+        void cancel(@NonNull Runnable task);
+    }
+
+    static Scheduler on(@NonNull final Handler handler) {
+        return new Scheduler() {
+            @Override public long uptimeMs() { return SystemClock.uptimeMillis(); }
+            @Override public void postDelayed(@NonNull Runnable task, long delayMs) { handler.postDelayed(task, delayMs); }
+            @Override public void cancel(@NonNull Runnable task) { handler.removeCallbacks(task); }
+        };
+    }
+
+    private final Scheduler scheduler;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    @Nullable private PlaybackState current;
+
+    StatePublisher(@NonNull Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Registers {@code subscriber} for changes in {@code fields}, delivered at most every
+     * {@code minIntervalMs} unless one of {@code urgentFields} changed.
+     */
+    void subscribe(int fields, long minIntervalMs, int urgentFields, @NonNull Subscriber subscriber) {
+        subscriptions.add(new Subscription(fields, minIntervalMs, urgentFields, subscriber));
+    }
+
+    void publish(@NonNull PlaybackState next) {
+        int changed = next.changesFrom(current);
+        current = next;
+        if (changed == 0) return;
+        for (Subscription subscription : subscriptions) subscription.offer(changed);
+    }
+
+    @Nullable
+    PlaybackState current() {
+        return current;
+    }
+
+    /**
+     * Delivers everything still pending right away, e.g. before the service goes down.
+     */
+    void flush() {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.scheduled) {
+                scheduler.cancel(subscription);
+                subscription.run();
+            }
+        }
+    }
+
+    void release() {
+        for (Subscription subscription : subscriptions) scheduler.cancel(subscription);
+        subscriptions.clear();
+    }
+
+    private final class Subscription implements Runnable {
+        final int fields;
+        final long minIntervalMs;
+        final int urgentFields;
+        final Subscriber subscriber;
+
+        int pending;
+        boolean scheduled;
+        long dueAtMs;
+        long lastDeliveredAtMs = Long.MIN_VALUE / 2;
+
+        Subscription(int fields, long minIntervalMs, int urgentFields, Subscriber subscriber) {
+            this.fields = fields;
+            this.minIntervalMs = minIntervalMs;
+            this.urgentFields = urgentFields;
+            this.subscriber = subscriber;
+        }
+
+        void offer(int changed) {
+            int relevant = changed & fields;
+            if (relevant == 0) return;
+            pending |= relevant;
+            long now = scheduler.uptimeMs();
+            long due = (relevant & urgentFields) != 0 ? now : Math.max(now, lastDeliveredAtMs + minIntervalMs);
+            if (scheduled) {
+                if (due >= dueAtMs) return;
+                scheduler.cancel(this);
+            }
+            scheduled = true;
+            dueAtMs = due;
+            scheduler.postDelayed(this, due - now);
+        }
+
+        @Override
+        public void run() {
+            scheduled = false;
+            PlaybackState state = current;
+            if (pending == 0 || state == null) return;
+            int changed = pending;
+            pending = 0;
+            lastDeliveredAtMs = scheduler.uptimeMs();
+            subscriber.onStateChanged(state, changed);
+        }
+    }
+}
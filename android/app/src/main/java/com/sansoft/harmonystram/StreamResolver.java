@@ -0,0 +1,219 @@
+package com.sansoft.harmonystram;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Single entry point for turning a videoId into playable stream URLs.
+ *
+ * <p>Results come from {@link ResolvedStreamCache} when possible. Otherwise concurrent
+ * requests for the same (videoId, mode) share one underlying extraction: the first
+ * caller (the leader) runs it on its own thread and later callers wait for its result.
+ * Every caller holds its own {@link Ticket}, so one caller cancelling never affects the
+ * others. Once the last caller of a running extraction cancels, its
+ * {@link CancellationScope} aborts the in-flight HTTP call.
+ */
+final class StreamResolver {
+
+    private static final String TAG = "StreamResolver";
+
+    private final ResolvedStreamCache cache;
+    private final YouTubeStreamExtractor extractor;
+    private final Map<String, Flight> inFlight = new HashMap<>();
+
+    StreamResolver(@NonNull ResolvedStreamCache cache, @NonNull YouTubeStreamExtractor extractor) {
+        this.cache = cache;
+        this.extractor = extractor;
+    }
+
+    /**
+     * Opens a ticket for the given video and mode. Call {@link Ticket#await(int)} on the
+     * calling thread to obtain the result.
+     */
+    @NonNull
+    Ticket open(@NonNull String videoId, boolean videoMode) {
+        YouTubeStreamExtractor.ExtractionResult cached = cache.get(videoId, videoMode);
+        if (cached != null) {
+            Log.d(TAG, "Resolved stream cache hit: videoId=" + videoId + " mode=" + modeName(videoMode));
+            return Ticket.completed(cached);
+        }
+
+        String key = (videoMode ? "v:" : "a:") + videoId;
+        synchronized (inFlight) {
+            Flight flight = inFlight.get(key);
+            boolean leader = flight == null;
+            if (leader) {
+                flight = new Flight(key, videoId, videoMode);
+                inFlight.put(key, flight);
+            } else {
+                Log.d(TAG, "Joining in-flight extraction: videoId=" + videoId + " mode=" + modeName(videoMode));
+            }
+            Ticket ticket = new Ticket(flight, leader);
+            flight.tickets.add(ticket);
+            return ticket;
+        }
+    }
+
+    /**
+     * Convenience for callers that never cancel.
+     */
+    @NonNull
+    YouTubeStreamExtractor.ExtractionResult resolve(@NonNull String videoId, boolean videoMode, int attempt)
+            throws Exception {
+        return open(videoId, videoMode).await(attempt);
+    }
+
+    private static String modeName(boolean videoMode) {
+        return videoMode ? "video" : "audio";
+    }
+
+    // -------------------------------------------------------------------------
+    // Flight: one shared extraction
+    // -------------------------------------------------------------------------
+    private final class Flight {
+        final String key;
+        final String videoId;
+        final boolean videoMode;
+        final List<Ticket> tickets = new ArrayList<>();
+        final CancellationScope scope = new CancellationScope();
+        boolean started;
+
+        Flight(String key, String videoId, boolean videoMode) {
+            this.key = key;
+            this.videoId = videoId;
+            this.videoMode = videoMode;
+        }
+
+        void run(int attempt) {
+            synchronized (inFlight) {
+                if (started || tickets.isEmpty()) return;
+                started = true;
+            }
+
+            YouTubeStreamExtractor.ExtractionResult result = null;
+            Throwable error = null;
+            // Stamped before extracting: a policy that tightens mid-flight drops the result.
+            int policyStrictness = cache.policyStrictness();
+            CancellationScope previous = CancellationScope.bind(scope);
+            try {
+                result = extractor.extract(videoId, videoMode, attempt);
+                cache.put(videoId, videoMode, result, policyStrictness);
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                CancellationScope.restore(previous);
+            }
+            if (scope.isCancelled()) {
+                Log.d(TAG, "Abandoned extraction aborted: videoId=" + videoId + " mode=" + modeName(videoMode));
+            }
+
+            List<Ticket> waiting;
+            synchronized (inFlight) {
+                if (inFlight.get(key) == this) inFlight.remove(key);
+                waiting = new ArrayList<>(tickets);
+                tickets.clear();
+            }
+            for (Ticket ticket : waiting) {
+                ticket.complete(result, error);
+            }
+        }
+
+        /**
+         * Detaches a cancelled ticket. When nobody is waiting any more an unstarted flight
+         * is dropped and a running one is aborted.
+         */
+        void detach(Ticket ticket) {
+            synchronized (inFlight) {
+                tickets.remove(ticket);
+                if (!tickets.isEmpty()) return;
+                if (inFlight.get(key) == this) inFlight.remove(key);
+                if (!started) return;
+            }
+            scope.cancel();
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Ticket: one caller's view of a flight
+    // -------------------------------------------------------------------------
+    static final class Ticket {
+        @Nullable private final Flight flight;
+        private final boolean leader;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile YouTubeStreamExtractor.ExtractionResult result;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+
+        private Ticket(@Nullable Flight flight, boolean leader) {
+            this.flight = flight;
+            this.leader = leader;
+        }
+
+        static Ticket completed(YouTubeStreamExtractor.ExtractionResult result) {
+            Ticket ticket = new Ticket(null, false);
+            ticket.complete(result, null);
+            return ticket;
+        }
+
+        boolean isLeader() {
+            return leader;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * True once {@link #await(int)} would return without blocking, e.g. for cache hits.
+         */
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * Blocks until this caller's result is available. The leader runs the extraction
+         * on the calling thread, even if it was cancelled itself, as long as other callers
+         * still wait for it.
+         *
+         * @throws CancellationException if this ticket was cancelled.
+         */
+        @NonNull
+        YouTubeStreamExtractor.ExtractionResult await(int attempt) throws Exception {
+            if (leader && flight != null) {
+                flight.run(attempt);
+            }
+            done.await();
+            if (cancelled) throw new CancellationException("Stream resolve cancelled");
+            if (error instanceof Exception) throw (Exception) error;
+            if (error != null) throw new IllegalStateException(error);
+            return result;
+        }
+
+        /**
+         * Abandons this caller's interest. Other callers sharing the flight are unaffected.
+         */
+        void cancel() {
+            if (done.getCount() == 0) return;
+            cancelled = true;
+            if (flight != null) flight.detach(this);
+            done.countDown();
+        }
+
+        private void complete(@Nullable YouTubeStreamExtractor.ExtractionResult result,
+                              @Nullable Throwable error) {
+            if (cancelled) return;
+            this.result = result;
+            this.error = error;
+            done.countDown();
+        }
+    }
+}
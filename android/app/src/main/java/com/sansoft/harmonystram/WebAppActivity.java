@@ -23,6 +23,7 @@ import androidx.core.content.ContextCompat;
 import androidx.core.view.WindowCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.core.view.WindowInsetsControllerCompat;
+import androidx.lifecycle.ViewModelProvider;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -90,7 +91,9 @@ public class WebAppActivity extends AppCompatActivity
         gestureController = new GestureController(this, webView, seekOverlayIndicator, this);
         gestureController.attach();
 
-        playbackObserver = new PlaybackObserver(this, this);
+        playbackObserver = new PlaybackObserver(this, this,
+                new ViewModelProvider(this).get(PlaybackViewModel.class));
+        // Binding creates the service, which warms the extractor while the web UI loads.
         playbackObserver.start();
 
         requestNotificationPermissionIfNeeded();
@@ -122,26 +125,26 @@ public class WebAppActivity extends AppCompatActivity
     }
 
     @Override
-    public void onPlaybackStateChanged(@NonNull Intent stateIntent) {
-        playbackActive = stateIntent.getBooleanExtra("playing", false);
-        videoModeEnabled = stateIntent.getBooleanExtra("video_mode", false);
-        playerUiController.updateFromState(stateIntent);
+    public void onPlaybackStateChanged(@NonNull PlaybackState state) {
+        playbackActive = state.playing;
+        videoModeEnabled = state.videoMode;
+        playerUiController.updateFromState(state);
         applyModeUi(videoModeEnabled);
 
         JSONObject payload = new JSONObject();
         try {
-            payload.put("title", stateIntent.getStringExtra("title"));
-            payload.put("artist", stateIntent.getStringExtra("artist"));
+            payload.put("title", state.title);
+            payload.put("artist", state.artist);
             payload.put("playing", playbackActive);
             payload.put("isPlaying", playbackActive);
-            payload.put("position_ms", stateIntent.getLongExtra("position_ms", 0L));
-            payload.put("duration_ms", stateIntent.getLongExtra("duration_ms", 0L));
-            payload.put("thumbnailUrl", stateIntent.getStringExtra("thumbnailUrl"));
+            payload.put("position_ms", state.positionMs);
+            payload.put("duration_ms", state.durationMs);
+            payload.put("thumbnailUrl", state.thumbnailUrl);
             payload.put("video_mode", videoModeEnabled);
-            payload.put("queue_index", stateIntent.getIntExtra("queue_index", -1));
-            payload.put("queue_length", stateIntent.getIntExtra("queue_length", 0));
-            payload.put("last_error", stateIntent.getStringExtra("last_error"));
-            payload.put("event_ts", stateIntent.getLongExtra("event_ts", System.currentTimeMillis()));
+            payload.put("queue_index", state.queueIndex);
+            payload.put("queue_length", state.queueLength);
+            payload.put("last_error", state.lastError);
+            payload.put("event_ts", System.currentTimeMillis());
         } catch (JSONException ignored) {
         }
         dispatchToWeb("window.dispatchEvent(new CustomEvent('nativePlaybackState', { detail: " + payload + " }));");
@@ -156,8 +159,8 @@ public class WebAppActivity extends AppCompatActivity
     }
 
     @Override
-    public void onMediaAction(@NonNull Intent mediaIntent) {
-        webViewManager.dispatchPendingMediaAction(mediaIntent);
+    public void onMediaAction(@NonNull String action, @NonNull PlaybackState state) {
+        webViewManager.dispatchMediaAction(action, state);
         clearPendingMediaAction();
     }
 
@@ -236,13 +239,23 @@ public class WebAppActivity extends AppCompatActivity
         if (intent == null) return;
         String action = intent.getStringExtra(PlaybackService.EXTRA_PENDING_MEDIA_ACTION);
         if (action != null && !action.isEmpty()) {
-            Intent mediaIntent = new Intent(PlaybackService.ACTION_MEDIA_CONTROL);
-            mediaIntent.putExtra("action", action);
-            webViewManager.dispatchPendingMediaAction(mediaIntent);
+            webViewManager.dispatchMediaAction(action, null);
             clearPendingMediaAction();
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (playbackObserver != null) playbackObserver.setUiVisible(true);
+    }
+
+    @Override
+    protected void onStop() {
+        if (playbackObserver != null) playbackObserver.setUiVisible(false);
+        super.onStop();
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
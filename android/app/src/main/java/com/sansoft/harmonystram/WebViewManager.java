@@ -14,6 +14,7 @@ import android.webkit.WebSettings;
 import android.webkit.WebView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.webkit.WebViewAssetLoader;
 import androidx.webkit.WebViewClientCompat;
 
@@ -114,9 +115,12 @@ final class WebViewManager {
         webView.destroy();
     }
 
-    void dispatchPendingMediaAction(@NonNull Intent mediaIntent) {
-        String action = mediaIntent.getStringExtra("action");
-        if (action == null || action.isEmpty()) return;
+    /**
+     * Forwards a media command to the web UI along with the playback state it applies to,
+     * when the service supplied one.
+     */
+    void dispatchMediaAction(@NonNull String action, @Nullable PlaybackState state) {
+        if (action.isEmpty()) return;
         String normalizedAction = normalizeMediaAction(action);
         if (normalizedAction == null || normalizedAction.isEmpty()) {
             normalizedAction = action;
@@ -125,15 +129,15 @@ final class WebViewManager {
         JSONObject detail = new JSONObject();
         try {
             detail.put("action", normalizedAction);
-            detail.put("queue_index", mediaIntent.getIntExtra("queue_index", -1));
-            detail.put("queue_length", mediaIntent.getIntExtra("queue_length", 0));
-            detail.put("title", mediaIntent.getStringExtra("title"));
-            detail.put("artist", mediaIntent.getStringExtra("artist"));
-            detail.put("video_id", mediaIntent.getStringExtra("video_id"));
-            detail.put("position_ms", mediaIntent.getLongExtra("position_ms", 0L));
-            detail.put("duration_ms", mediaIntent.getLongExtra("duration_ms", 0L));
-            detail.put("playing", mediaIntent.getBooleanExtra("playing", false));
-            detail.put("event_ts", mediaIntent.getLongExtra("event_ts", System.currentTimeMillis()));
+            detail.put("queue_index", state != null ? state.queueIndex : -1);
+            detail.put("queue_length", state != null ? state.queueLength : 0);
+            detail.put("title", state != null ? state.title : null);
+            detail.put("artist", state != null ? state.artist : null);
+            detail.put("video_id", state != null ? state.videoId : null);
+            detail.put("position_ms", state != null ? state.positionMs : 0L);
+            detail.put("duration_ms", state != null ? state.durationMs : 0L);
+            detail.put("playing", state != null && state.playing);
+            detail.put("event_ts", System.currentTimeMillis());
         } catch (Exception ignored) {
         }
 
@@ -161,6 +165,12 @@ final class WebViewManager {
             return assetLoader.shouldInterceptRequest(request.getUrl());
         }
 
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            super.onPageFinished(view, url);
+            // Navigation may have set or cleared cookies the extractor and player reuse.
+            CookieSnapshot.invalidate();
+        }
     }
 
     private final class MultiPathAssetsHandler implements WebViewAssetLoader.PathHandler {
@@ -390,6 +400,25 @@ final class WebViewManager {
             actions.sendServiceIntent(intent);
         }
 
+        @JavascriptInterface
+        public void setDataSaver(boolean enabled) {
+            Intent intent = new Intent(activity, PlaybackService.class);
+            intent.setAction(PlaybackService.ACTION_SET_DATA_SAVER);
+            intent.putExtra("enabled", enabled);
+            actions.sendServiceIntent(intent);
+        }
+
+        @JavascriptInterface
+        public boolean isDataSaverEnabled() {
+            return NetworkPolicy.isDataSaverPreferred(activity);
+        }
+
+        @JavascriptInterface
+        public void notifyAuthChanged() {
+            // Sign-in/sign-out changes the cookies sent with extractor and media requests.
+            CookieSnapshot.invalidate();
+        }
+
         @JavascriptInterface
         public void setPlayerBackgroundColor(String color) {
             // no-op: preserved bridge API
@@ -1,53 +1,153 @@
 package com.sansoft.harmonystram;
 
+import android.util.Log;
+
 import androidx.annotation.Nullable;
 
+import org.schabi.newpipe.extractor.MediaFormat;
 import org.schabi.newpipe.extractor.ServiceList;
 import org.schabi.newpipe.extractor.StreamingService;
+import org.schabi.newpipe.extractor.services.youtube.ItagItem;
 import org.schabi.newpipe.extractor.stream.AudioStream;
+import org.schabi.newpipe.extractor.stream.DeliveryMethod;
+import org.schabi.newpipe.extractor.stream.Stream;
 import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.extractor.stream.StreamType;
 import org.schabi.newpipe.extractor.stream.VideoStream;
 
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Standalone stream extraction helper to keep playback service focused on playback state.
  */
 final class YouTubeStreamExtractor {
 
+    private static final String TAG = "YouTubeStreamExtractor";
+
     static final String EXTRACTOR_USER_AGENT =
             "com.google.android.youtube/19.09.37 (Linux; U; Android 12) gzip";
 
+    // Ranked alternatives kept per result for player-side failover.
+    static final int MAX_FALLBACK_URLS = 6;
+
+    // Zero or negative disables hedging and keeps the sequential normalized-then-raw order.
+    private final long hedgeDelayMs;
+    // Null selects as on an unknown, unmetered network.
+    @Nullable private final NetworkPolicy networkPolicy;
+    // Hedges run on its hedge lane, owned by the asking job's priority; null disables them.
+    @Nullable private final ResolverScheduler scheduler;
+
+    YouTubeStreamExtractor() {
+        this(0L, null, null);
+    }
+
+    YouTubeStreamExtractor(long hedgeDelayMs, @Nullable NetworkPolicy networkPolicy,
+                           @Nullable ResolverScheduler scheduler) {
+        this.hedgeDelayMs = hedgeDelayMs;
+        this.networkPolicy = networkPolicy;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * How {@link ExtractionResult#streamUrl} has to be played: a plain media file, an HLS
+     * playlist, or a DASH manifest (fetched from the URL, or synthesized into
+     * {@link ExtractionResult#dashManifest}).
+     */
+    enum StreamKind {
+        PROGRESSIVE, HLS, DASH;
+
+        static StreamKind ofUrl(@Nullable String url) {
+            if (url == null) return PROGRESSIVE;
+            String value = url.trim().toLowerCase(Locale.US);
+            int end = value.length();
+            int query = value.indexOf('?');
+            if (query >= 0) end = query;
+            String path = value.substring(0, end);
+            if (path.endsWith(".m3u8") || path.contains("/hls_playlist/") || path.contains("/hls_variant/")) {
+                return HLS;
+            }
+            if (path.endsWith(".mpd") || path.contains("/dash_manifest/")) return DASH;
+            return PROGRESSIVE;
+        }
+    }
+
     static final class ExtractionResult {
         final String streamUrl;
         @Nullable final String audioStreamUrl;
         @Nullable final String videoStreamUrl;
+        final StreamKind kind;
+        final boolean live;
+        // Inline manifest for DASH results synthesized from the itag list; null otherwise.
+        @Nullable final String dashManifest;
+        // Self-contained URLs to fail over to when streamUrl stops playing, best first.
+        final List<String> fallbackUrls;
 
         ExtractionResult(String streamUrl, @Nullable String audioStreamUrl, @Nullable String videoStreamUrl) {
+            this(streamUrl, audioStreamUrl, videoStreamUrl, StreamKind.ofUrl(streamUrl), false, null);
+        }
+
+        ExtractionResult(String streamUrl, @Nullable String audioStreamUrl, @Nullable String videoStreamUrl,
+                         StreamKind kind, boolean live, @Nullable String dashManifest) {
+            this(streamUrl, audioStreamUrl, videoStreamUrl, kind, live, dashManifest,
+                    Collections.<String>emptyList());
+        }
+
+        ExtractionResult(String streamUrl, @Nullable String audioStreamUrl, @Nullable String videoStreamUrl,
+                         StreamKind kind, boolean live, @Nullable String dashManifest,
+                         List<String> fallbackUrls) {
             this.streamUrl = streamUrl;
             this.audioStreamUrl = audioStreamUrl;
             this.videoStreamUrl = videoStreamUrl;
+            this.kind = kind;
+            this.live = live;
+            this.dashManifest = dashManifest;
+            this.fallbackUrls = Collections.unmodifiableList(new ArrayList<>(fallbackUrls));
         }
     }
 
     ExtractionResult extract(String videoId, boolean preferVideo, int attempt) throws Exception {
         if (isDirectStreamUrl(videoId)) {
             String direct = videoId == null ? null : videoId.trim();
-            return new ExtractionResult(direct, direct, direct);
+            return new ExtractionResult(direct, direct, direct, StreamKind.ofUrl(direct), false, null);
         }
 
+        String normalized = YouTubeUrlNormalizer.normalizeWatchUrl(videoId);
+        // The raw input is the alternate strategy; without a distinct one there is nothing
+        // to hedge with, and repeating the same request would only double the load.
+        String alternate = normalized.equals(videoId) ? null : videoId;
+        ResolverScheduler.Job job = ResolverScheduler.currentJob();
+        if (hedgeDelayMs <= 0L || alternate == null || scheduler == null || job == null) {
+            try {
+                return extractFrom(normalized, preferVideo, attempt);
+            } catch (Throwable normalizedFailure) {
+                if (alternate == null) throw normalizedFailure;
+                // Fallback to the original source in case upstream extractor logic
+                // is stricter for specific URL variants.
+                return extractFrom(alternate, preferVideo, attempt);
+            }
+        }
+        return extractHedged(normalized, alternate, preferVideo, attempt, job.priority);
+    }
+
+    private ExtractionResult extractFrom(String source, boolean preferVideo, int attempt) throws Exception {
         StreamingService yt = ServiceList.YouTube;
-        StreamInfo info = resolveStreamInfo(yt, videoId);
+        StreamInfo info = StreamInfo.getInfo(yt, source);
+        if (isLive(info)) return pickLiveStream(info, attempt);
 
         List<AudioStream> audioStreams = info.getAudioStreams();
         List<VideoStream> videoStreams = info.getVideoStreams();
 
-        String audioCandidate = pickPreferredAudioStream(audioStreams);
+        List<String> rankedAudio = rankAudioStreams(audioStreams);
+        List<String> rankedMuxed = rankMuxedVideoStreams(videoStreams);
+        String audioCandidate = rankedAudio.isEmpty() ? null : rankedAudio.get(0);
         String videoCandidate = pickPreferredVideoStream(videoStreams);
         String hlsCandidate = pickHlsStream(info);
 
@@ -64,20 +164,219 @@ final class YouTubeStreamExtractor {
                     + ", preferVideo=" + preferVideo + "]");
         }
 
-        return new ExtractionResult(selected, audioCandidate, videoCandidate);
+        List<String> fallbacks = preferVideo
+                ? rankFallbacks(selected, rankedMuxed, rankedAudio, Collections.singletonList(hlsCandidate))
+                : rankFallbacks(selected, rankedAudio, Collections.singletonList(hlsCandidate), rankedMuxed);
+
+        if (preferVideo && !selected.equals(hlsCandidate)) {
+            ExtractionResult adaptive = synthesizeDash(info, audioStreams, selected, audioCandidate,
+                    rankFallbacks(null, Collections.singletonList(selected), fallbacks));
+            if (adaptive != null) return adaptive;
+        }
+        return new ExtractionResult(selected, audioCandidate, videoCandidate,
+                selected.equals(hlsCandidate) ? StreamKind.HLS : StreamKind.ofUrl(selected), false, null,
+                fallbacks);
     }
 
-    private StreamInfo resolveStreamInfo(StreamingService yt, String videoIdOrUrl) throws Exception {
-        String normalized = YouTubeUrlNormalizer.normalizeWatchUrl(videoIdOrUrl);
+    // Concatenates the ranked lists, best first, without duplicates or {@code selected}.
+    @SafeVarargs
+    private final List<String> rankFallbacks(@Nullable String selected, List<String>... ranked) {
+        LinkedHashSet<String> urls = new LinkedHashSet<>();
+        for (List<String> list : ranked) {
+            for (String url : list) {
+                if (urls.size() >= MAX_FALLBACK_URLS) return new ArrayList<>(urls);
+                if (url != null && !url.equals(selected) && isLikelyPlayableUrl(url)) urls.add(url);
+            }
+        }
+        return new ArrayList<>(urls);
+    }
+
+    // -------------------------------------------------------------------------
+    // Live and adaptive streams
+    // -------------------------------------------------------------------------
+
+    private boolean isLive(StreamInfo info) {
+        try {
+            StreamType type = info.getStreamType();
+            return type == StreamType.LIVE_STREAM || type == StreamType.AUDIO_LIVE_STREAM;
+        } catch (Throwable ignored) {
+            return false;
+        }
+    }
+
+    // Live streams have no progressive URLs; HLS starts fastest, DASH is the fallback.
+    private ExtractionResult pickLiveStream(StreamInfo info, int attempt) {
+        String hls = pickHlsStream(info);
+        if (hls != null) return new ExtractionResult(hls, null, null, StreamKind.HLS, true, null);
+        String dash = pickDashMpdStream(info);
+        if (dash != null) return new ExtractionResult(dash, null, null, StreamKind.DASH, true, null);
+        throw new IllegalStateException("Live stream without HLS or DASH manifest [attempt=" + attempt + "]");
+    }
+
+    /**
+     * Pairs the best video-only stream the network policy allows with the chosen audio
+     * stream in a synthesized DASH manifest. Muxed progressive YouTube streams stop at 360p,
+     * so this is what gives video mode real resolution. Returns null when the policy rules
+     * it out or either side lacks byte-range metadata.
+     */
+    @Nullable
+    private ExtractionResult synthesizeDash(StreamInfo info, @Nullable List<AudioStream> audioStreams,
+                                            String progressiveFallback, @Nullable String audioUrl,
+                                            List<String> fallbacks) {
+        int maxHeight = networkPolicy != null ? networkPolicy.maxVideoHeight() : NetworkPolicy.DEFAULT_MAX_VIDEO_HEIGHT;
+        if (maxHeight <= 0) return null;
         try {
-            return StreamInfo.getInfo(yt, normalized);
-        } catch (Throwable normalizedFailure) {
-            if (normalized.equals(videoIdOrUrl)) {
-                throw normalizedFailure;
+            DashManifestSynthesizer.Representation video =
+                    bestVideoOnlyRepresentation(info.getVideoOnlyStreams(), maxHeight);
+            DashManifestSynthesizer.Representation audio = audioRepresentation(audioStreams, audioUrl);
+            if (video == null || audio == null) return null;
+            long durationMs = info.getDuration() * 1000L;
+            String manifest = DashManifestSynthesizer.build(durationMs, Arrays.asList(video, audio));
+            if (manifest == null) return null;
+            Log.d(TAG, "Synthesized DASH manifest: videoItag=" + video.itag + " audioItag=" + audio.itag);
+            return new ExtractionResult(video.url, audioUrl, progressiveFallback, StreamKind.DASH, false, manifest,
+                    fallbacks);
+        } catch (Throwable t) {
+            Log.w(TAG, "DASH synthesis failed; using progressive stream", t);
+            return null;
+        }
+    }
+
+    @Nullable
+    private DashManifestSynthesizer.Representation bestVideoOnlyRepresentation(@Nullable List<VideoStream> streams,
+                                                                              int maxHeight) {
+        if (streams == null) return null;
+        DashManifestSynthesizer.Representation best = null;
+        for (VideoStream stream : streams) {
+            DashManifestSynthesizer.Representation candidate = representationOf(stream, true);
+            if (candidate == null || candidate.height > maxHeight) continue;
+            // AVC decodes in hardware everywhere; VP9/AV1 only win at a strictly higher height.
+            if (best == null || candidate.height > best.height
+                    || (candidate.height == best.height && isAvc(candidate) && !isAvc(best))) {
+                best = candidate;
             }
-            // Fallback to the original source in case upstream extractor logic
-            // is stricter for specific URL variants.
-            return StreamInfo.getInfo(yt, videoIdOrUrl);
+        }
+        return best;
+    }
+
+    @Nullable
+    private DashManifestSynthesizer.Representation audioRepresentation(@Nullable List<AudioStream> streams,
+                                                                       @Nullable String audioUrl) {
+        if (streams == null || audioUrl == null) return null;
+        for (AudioStream stream : streams) {
+            if (stream != null && audioUrl.equals(stream.getContent())) return representationOf(stream, false);
+        }
+        return null;
+    }
+
+    @Nullable
+    private DashManifestSynthesizer.Representation representationOf(@Nullable Stream stream, boolean video) {
+        if (stream == null || !isLikelyPlayableUrl(stream.getContent())) return null;
+        if (stream.getDeliveryMethod() != null && stream.getDeliveryMethod() != DeliveryMethod.PROGRESSIVE_HTTP) {
+            return null;
+        }
+        ItagItem itag = stream.getItagItem();
+        MediaFormat format = stream.getFormat();
+        if (itag == null || format == null || format.getMimeType() == null || itag.getCodec() == null) return null;
+        DashManifestSynthesizer.Representation representation = new DashManifestSynthesizer.Representation(
+                video, itag.id, format.getMimeType(), itag.getCodec(), itag.getBitrate(), stream.getContent(),
+                itag.getInitStart(), itag.getInitEnd(), itag.getIndexStart(), itag.getIndexEnd());
+        if (!representation.hasSegmentIndex()) return null;
+        representation.width = itag.getWidth();
+        representation.height = itag.getHeight();
+        representation.fps = itag.getFps();
+        representation.sampleRate = itag.getSampleRate();
+        representation.channels = itag.getAudioChannels();
+        return representation;
+    }
+
+    private static boolean isAvc(DashManifestSynthesizer.Representation representation) {
+        return representation.codecs.startsWith("avc1");
+    }
+
+    // -------------------------------------------------------------------------
+    // Hedging
+    // -------------------------------------------------------------------------
+
+    /**
+     * Runs the primary attempt on the calling thread and schedules the alternate on the
+     * scheduler's hedge lane, where it starts once the primary has been silent for
+     * {@link #hedgeDelayMs}; no lane thread waits out the delay. The first valid result
+     * wins and the other attempt's HTTP calls are aborted through its
+     * {@link CancellationScope}. A primary failure before the hedge fired runs the
+     * alternate inline instead.
+     */
+    private ExtractionResult extractHedged(String primary, final String alternate, final boolean preferVideo,
+                                           final int attempt, ResolverScheduler.Priority priority) throws Exception {
+        CancellationScope parent = CancellationScope.current();
+        final Race race = new Race(CancellationScope.childOf(parent), CancellationScope.childOf(parent));
+        ResolverScheduler.Job hedge = scheduler.submitDelayed(priority, hedgeDelayMs, () -> {
+            if (!race.claimAlternate()) return;
+            Log.d(TAG, "Hedging extraction: attempt=" + attempt + " alternate=" + alternate);
+            race.run(false, alternate, preferVideo, attempt);
+        });
+        try {
+            race.run(true, primary, preferVideo, attempt);
+            if (race.claimAlternate()) race.run(false, alternate, preferVideo, attempt);
+            return race.awaitResult();
+        } finally {
+            hedge.cancel();
+            race.primaryScope.cancel();
+            race.alternateScope.cancel();
+        }
+    }
+
+    private final class Race {
+        final CancellationScope primaryScope;
+        final CancellationScope alternateScope;
+        private boolean alternateClaimed;
+        private boolean alternateDone;
+        @Nullable private ExtractionResult winner;
+        @Nullable private Throwable firstFailure;
+
+        Race(CancellationScope primaryScope, CancellationScope alternateScope) {
+            this.primaryScope = primaryScope;
+            this.alternateScope = alternateScope;
+        }
+
+        void run(boolean primaryAttempt, String source, boolean preferVideo, int attempt) {
+            CancellationScope previous = CancellationScope.bind(primaryAttempt ? primaryScope : alternateScope);
+            try {
+                ExtractionResult result = extractFrom(source, preferVideo, attempt);
+                synchronized (this) {
+                    if (winner == null) winner = result;
+                }
+                (primaryAttempt ? alternateScope : primaryScope).cancel();
+            } catch (Throwable t) {
+                synchronized (this) {
+                    if (firstFailure == null) firstFailure = t;
+                }
+            } finally {
+                CancellationScope.restore(previous);
+                synchronized (this) {
+                    if (!primaryAttempt) alternateDone = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Returns true exactly once, to whoever gets to run the alternate, while it is
+         * still needed.
+         */
+        synchronized boolean claimAlternate() {
+            if (alternateClaimed || winner != null) return false;
+            alternateClaimed = true;
+            return true;
+        }
+
+        synchronized ExtractionResult awaitResult() throws Exception {
+            while (winner == null && alternateClaimed && !alternateDone) {
+                wait();
+            }
+            if (winner != null) return winner;
+            if (firstFailure instanceof Exception) throw (Exception) firstFailure;
+            throw new IllegalStateException(firstFailure);
         }
     }
 
@@ -110,18 +409,38 @@ final class YouTubeStreamExtractor {
         return nonThrottled != null ? nonThrottled : fallback;
     }
 
-    @Nullable
-    private String pickPreferredAudioStream(@Nullable List<AudioStream> streams) {
-        if (streams == null || streams.isEmpty()) return null;
+    // Muxed (audio+video) stream URLs, unthrottled ones first; video-only streams cannot
+    // stand in for a failed source on their own.
+    private List<String> rankMuxedVideoStreams(@Nullable List<VideoStream> videoStreams) {
+        List<String> preferred = new ArrayList<>();
+        List<String> throttled = new ArrayList<>();
+        if (videoStreams == null) return preferred;
+        for (VideoStream stream : videoStreams) {
+            if (stream == null || stream.isVideoOnly()) continue;
+            String url = stream.getContent();
+            if (!isLikelyPlayableUrl(url)) continue;
+            (isPotentiallyThrottledStream(url) ? throttled : preferred).add(url);
+        }
+        preferred.addAll(throttled);
+        return preferred;
+    }
+
+    // Playable audio stream URLs, best first.
+    private List<String> rankAudioStreams(@Nullable List<AudioStream> streams) {
+        List<String> urls = new ArrayList<>();
+        if (streams == null || streams.isEmpty()) return urls;
 
+        final long targetBitrate = networkPolicy != null
+                ? networkPolicy.targetAudioBitrate()
+                : BandwidthEstimator.DEFAULT_AUDIO_TARGET_BPS;
         List<AudioStream> ranked = new ArrayList<>(streams);
-        Collections.sort(ranked, Comparator.comparingInt(this::audioPreferenceScore));
+        Collections.sort(ranked, Comparator.comparingInt(stream -> audioPreferenceScore(stream, targetBitrate)));
         for (AudioStream stream : ranked) {
             if (stream == null) continue;
             String url = stream.getContent();
-            if (isLikelyPlayableUrl(url)) return url;
+            if (isLikelyPlayableUrl(url) && !urls.contains(url)) urls.add(url);
         }
-        return null;
+        return urls;
     }
 
     @Nullable
@@ -138,27 +457,54 @@ final class YouTubeStreamExtractor {
         return null;
     }
 
-    private int audioPreferenceScore(@Nullable AudioStream stream) {
+    @Nullable
+    private String pickDashMpdStream(@Nullable StreamInfo info) {
+        if (info == null) return null;
+        try {
+            Method m = info.getClass().getMethod("getDashMpdUrl");
+            Object value = m.invoke(info);
+            if (value instanceof String && isLikelyPlayableUrl((String) value)) {
+                return (String) value;
+            }
+        } catch (Throwable ignored) {
+        }
+        return null;
+    }
+
+    // Lower is better. Distance from the bandwidth-derived target bitrate dominates; the
+    // container and the known-good itags only break near-ties.
+    private int audioPreferenceScore(@Nullable AudioStream stream, long targetBitrate) {
         if (stream == null) return Integer.MAX_VALUE;
         String url = stream.getContent();
         if (!isLikelyPlayableUrl(url)) return Integer.MAX_VALUE - 1;
+        String format = stream.getFormat() != null ? stream.getFormat().name() : null;
+        return audioPreferenceScore(stream.getItag(), stream.getAverageBitrate(), format,
+                isPotentiallyThrottledStream(url), targetBitrate);
+    }
 
+    /**
+     * Score for an audio stream reporting {@code averageBitrateKbps} (NewPipe's unit, -1
+     * when unknown) against {@code targetBitrateBps}, the bit/s target of
+     * {@link BandwidthEstimator}.
+     */
+    static int audioPreferenceScore(int itag, int averageBitrateKbps, @Nullable String format,
+                                    boolean throttled, long targetBitrateBps) {
         int score = 100;
-        int itag = stream.getItag();
-        if (itag == 251) score -= 30; // opus webm
-        if (itag == 140) score -= 25; // m4a fallback
-
-        String format = safeLower(stream.getFormat() != null ? stream.getFormat().name() : null);
-        if (format.contains("webm")) score -= 10;
-        if (format.contains("m4a")) score -= 8;
-
-        long bitrate = stream.getAverageBitrate();
-        if (bitrate > 0) {
-            long bitrateDelta = Math.abs(bitrate - 128_000L);
-            score += (int) Math.min(40L, bitrateDelta / 8_000L);
+        String container = format == null ? "" : format.toLowerCase();
+        if (container.contains("webm")) score -= 10;
+        if (container.contains("m4a")) score -= 8;
+
+        boolean knownBitrate = averageBitrateKbps > 0;
+        if (knownBitrate) {
+            long bitrateBps = averageBitrateKbps * 1000L;
+            score += (int) Math.min(40L, Math.abs(bitrateBps - targetBitrateBps) / 8_000L);
+            if (bitrateBps < BandwidthEstimator.MIN_ADEQUATE_AUDIO_BPS) score += 40;
         }
+        // Without a bitrate the known-good itags decide; with one they only break ties.
+        if (itag == 251) score -= knownBitrate ? 3 : 30; // opus webm
+        if (itag == 140) score -= knownBitrate ? 2 : 25; // m4a fallback
 
-        if (isPotentiallyThrottledStream(url)) score += 15;
+        if (throttled) score += 15;
         return score;
     }
 
@@ -0,0 +1,24 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BandwidthEstimatorTest {
+
+    @Test
+    public void targetAudioBitrate_usesDefaultWithoutEstimate() {
+        assertEquals(BandwidthEstimator.DEFAULT_AUDIO_TARGET_BPS, BandwidthEstimator.targetAudioBitrate(0L));
+    }
+
+    @Test
+    public void targetAudioBitrate_dropsToLowestAdequateOnWeakLink() {
+        assertEquals(BandwidthEstimator.MIN_ADEQUATE_AUDIO_BPS, BandwidthEstimator.targetAudioBitrate(250_000L));
+    }
+
+    @Test
+    public void targetAudioBitrate_aimsForBestOnGoodLink() {
+        assertEquals(BandwidthEstimator.BEST_AUDIO_TARGET_BPS, BandwidthEstimator.targetAudioBitrate(20_000_000L));
+        assertEquals(BandwidthEstimator.DEFAULT_AUDIO_TARGET_BPS, BandwidthEstimator.targetAudioBitrate(1_500_000L));
+    }
+}
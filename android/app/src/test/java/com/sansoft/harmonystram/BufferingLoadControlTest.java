@@ -0,0 +1,34 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BufferingLoadControlTest {
+
+    @Test
+    public void select_keepsVideoProfileRegardlessOfVisibilityOrConstraints() {
+        assertEquals(BufferingLoadControl.Profile.VIDEO, BufferingLoadControl.Profile.select(true, true, false));
+        assertEquals(BufferingLoadControl.Profile.VIDEO, BufferingLoadControl.Profile.select(true, false, false));
+        assertEquals(BufferingLoadControl.Profile.VIDEO, BufferingLoadControl.Profile.select(true, true, true));
+    }
+
+    @Test
+    public void select_usesDataSaverProfileForConstrainedAudio() {
+        assertEquals(BufferingLoadControl.Profile.AUDIO_DATA_SAVER,
+                BufferingLoadControl.Profile.select(false, true, true));
+        assertEquals(BufferingLoadControl.Profile.AUDIO_DATA_SAVER,
+                BufferingLoadControl.Profile.select(false, false, true));
+    }
+
+    @Test
+    public void select_startsFastWhenVisibleAndBuffersDeepWhenHidden() {
+        assertEquals(BufferingLoadControl.Profile.AUDIO_FAST_START,
+                BufferingLoadControl.Profile.select(false, true, false));
+        assertEquals(BufferingLoadControl.Profile.AUDIO_BACKGROUND,
+                BufferingLoadControl.Profile.select(false, false, false));
+        assertTrue(BufferingLoadControl.Profile.AUDIO_FAST_START.bufferForPlaybackMs
+                < BufferingLoadControl.Profile.AUDIO_BACKGROUND.bufferForPlaybackMs);
+    }
+}
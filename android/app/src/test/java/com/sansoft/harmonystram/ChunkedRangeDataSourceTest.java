@@ -0,0 +1,148 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ChunkedRangeDataSourceTest {
+
+    private static final Executor DIRECT = Runnable::run;
+    private static final Executor RELEASED = runnable -> {
+        throw new RejectedExecutionException("released");
+    };
+
+    @Test
+    public void read_splitsTheRequestIntoChunkSizedRanges() throws IOException {
+        FakeResource resource = new FakeResource(bytes(250), true);
+        ChunkedRangeDataSource.RangeReader reader =
+                new ChunkedRangeDataSource.RangeReader(resource, 100, DIRECT, 1024, 20, 230);
+
+        assertEquals(230, reader.open());
+        assertArrayEquals(Arrays.copyOfRange(resource.data, 20, 230), readAll(reader));
+        assertEquals(Arrays.asList("20+100", "120+100", "220+10"), resource.opened);
+    }
+
+    @Test
+    public void read_opensRangesDirectlyOnceTheFactoryIsReleased() throws IOException {
+        FakeResource resource = new FakeResource(bytes(250), true);
+        ChunkedRangeDataSource.RangeReader reader =
+                new ChunkedRangeDataSource.RangeReader(resource, 100, RELEASED, 1024, 0, 250);
+
+        reader.open();
+        assertArrayEquals(resource.data, readAll(reader));
+        assertEquals(Arrays.asList("0+100", "100+100", "200+50"), resource.opened);
+    }
+
+    @Test
+    public void open_resolvesAnUnsetLengthFromTheResponse() throws IOException {
+        FakeResource resource = new FakeResource(bytes(250), true);
+        ChunkedRangeDataSource.RangeReader reader =
+                new ChunkedRangeDataSource.RangeReader(resource, 100, DIRECT, 1024, 30, C.LENGTH_UNSET);
+
+        assertEquals(250, reader.open());
+        assertArrayEquals(Arrays.copyOfRange(resource.data, 30, 250), readAll(reader));
+        assertEquals(Arrays.asList("30+100", "130+100", "230+20"), resource.opened);
+    }
+
+    @Test
+    public void read_endsAtAShortRangeWhenTheLengthIsUnknown() throws IOException {
+        FakeResource resource = new FakeResource(bytes(150), false);
+        ChunkedRangeDataSource.RangeReader reader =
+                new ChunkedRangeDataSource.RangeReader(resource, 100, DIRECT, 1024, 0, C.LENGTH_UNSET);
+
+        assertEquals(C.LENGTH_UNSET, reader.open());
+        assertArrayEquals(resource.data, readAll(reader));
+        assertEquals(C.RESULT_END_OF_INPUT, reader.read(new byte[8], 0, 8));
+    }
+
+    @Test
+    public void read_streamsThroughAPrefetchBufferSmallerThanTheRange() throws IOException {
+        FakeResource resource = new FakeResource(bytes(5_000), true);
+        Executor background = runnable -> new Thread(runnable).start();
+        ChunkedRangeDataSource.RangeReader reader =
+                new ChunkedRangeDataSource.RangeReader(resource, 2_000, background, 64, 0, 5_000);
+
+        reader.open();
+        assertArrayEquals(resource.data, readAll(reader));
+        reader.close();
+    }
+
+    @Test
+    public void parseResourceLength_readsTheContentRangeTotal() {
+        assertEquals(3456789L, ChunkedRangeDataSource.parseResourceLength(
+                Collections.singletonMap("Content-Range", Collections.singletonList("bytes 0-1048575/3456789"))));
+        assertEquals(C.LENGTH_UNSET, ChunkedRangeDataSource.parseResourceLength(
+                Collections.singletonMap("Content-Range", Collections.singletonList("bytes 0-1048575/*"))));
+        assertEquals(C.LENGTH_UNSET, ChunkedRangeDataSource.parseResourceLength(null));
+    }
+
+    private static byte[] readAll(ChunkedRangeDataSource.RangeReader reader) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[37];
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) (i * 31);
+        return data;
+    }
+
+    // Serves byte ranges of an in-memory resource, like a CDN answering Range requests.
+    private static final class FakeResource implements ChunkedRangeDataSource.RangeOpener {
+        final byte[] data;
+        final boolean reportsLength;
+        final List<String> opened = Collections.synchronizedList(new ArrayList<>());
+
+        FakeResource(byte[] data, boolean reportsLength) {
+            this.data = data;
+            this.reportsLength = reportsLength;
+        }
+
+        @NonNull
+        @Override
+        public ChunkedRangeDataSource.RangeStream open(final long start, long length) {
+            opened.add(start + "+" + length);
+            final int end = (int) Math.min(data.length, start + length);
+            return new ChunkedRangeDataSource.RangeStream() {
+                int position = (int) start;
+
+                @Override
+                public int read(@NonNull byte[] buffer, int offset, int count) {
+                    if (position >= end) return C.RESULT_END_OF_INPUT;
+                    int n = Math.min(count, end - position);
+                    System.arraycopy(data, position, buffer, offset, n);
+                    position += n;
+                    return n;
+                }
+
+                @Override
+                public long resourceLength() {
+                    return reportsLength ? data.length : C.LENGTH_UNSET;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class DashManifestSynthesizerTest {
+
+    @Test
+    public void build_describesVideoAndAudioAdaptationSets() {
+        DashManifestSynthesizer.Representation video = new DashManifestSynthesizer.Representation(
+                true, 136, "video/mp4", "avc1.4d401f", 1_500_000,
+                "https://rr1---sn-abc.googlevideo.com/videoplayback?itag=136&expire=1", 0, 740, 741, 1500);
+        video.width = 1280;
+        video.height = 720;
+        DashManifestSynthesizer.Representation audio = new DashManifestSynthesizer.Representation(
+                false, 251, "audio/webm", "opus", 160_000,
+                "https://rr1---sn-abc.googlevideo.com/videoplayback?itag=251", 0, 265, 266, 900);
+
+        String manifest = DashManifestSynthesizer.build(212_345L, Arrays.asList(video, audio));
+
+        assertNotNull(manifest);
+        assertTrue(manifest.contains("mediaPresentationDuration=\"PT212.345S\""));
+        assertTrue(manifest.contains("contentType=\"video\""));
+        assertTrue(manifest.contains("contentType=\"audio\""));
+        assertTrue(manifest.contains("itag=136&amp;expire=1</BaseURL>"));
+        assertTrue(manifest.contains("<SegmentBase indexRange=\"741-1500\"><Initialization range=\"0-740\"/>"));
+    }
+
+    @Test
+    public void build_returnsNullWithoutSegmentIndex() {
+        DashManifestSynthesizer.Representation noIndex = new DashManifestSynthesizer.Representation(
+                true, 136, "video/mp4", "avc1.4d401f", 1_500_000, "https://example.com/v", 0, 0, 0, 0);
+
+        assertNull(DashManifestSynthesizer.build(1000L, Collections.singletonList(noIndex)));
+    }
+
+    @Test
+    public void streamKind_isInferredFromUrl() {
+        assertEquals(YouTubeStreamExtractor.StreamKind.HLS,
+                YouTubeStreamExtractor.StreamKind.ofUrl("https://example.com/live/index.m3u8?token=1"));
+        assertEquals(YouTubeStreamExtractor.StreamKind.DASH,
+                YouTubeStreamExtractor.StreamKind.ofUrl("https://example.com/manifest.mpd"));
+        assertEquals(YouTubeStreamExtractor.StreamKind.PROGRESSIVE,
+                YouTubeStreamExtractor.StreamKind.ofUrl("https://example.com/track.m4a"));
+    }
+}
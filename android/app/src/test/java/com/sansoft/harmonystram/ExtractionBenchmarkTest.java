@@ -0,0 +1,105 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.schabi.newpipe.extractor.NewPipe;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs {@link YouTubeStreamExtractor#extract} against recorded fixtures and prints per-phase
+ * timings and allocations, so NewPipeExtractor bumps can be compared offline.
+ *
+ * <p>Only runs with {@code -PEXTRACTOR_BENCHMARK=true}, and is skipped unless the fixture
+ * directory holds a {@code videos.txt} manifest. Set {@code harmony.fixtures.record} to a
+ * comma-separated list of video ids to record a fresh set from the network first.
+ */
+public class ExtractionBenchmarkTest {
+
+    private static final String FIXTURES_DIR_PROPERTY = "harmony.fixtures.dir";
+    private static final String RECORD_PROPERTY = "harmony.fixtures.record";
+    private static final String MANIFEST = "videos.txt";
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    @Test
+    public void extractFromFixtures() throws Exception {
+        File dir = new File(System.getProperty(FIXTURES_DIR_PROPERTY, "src/test/fixtures/extractor"));
+        String record = System.getProperty(RECORD_PROPERTY, "").trim();
+        if (!record.isEmpty()) {
+            recordFixtures(dir, record);
+        }
+        File manifest = new File(dir, MANIFEST);
+        Assume.assumeTrue("No extractor fixtures in " + dir.getAbsolutePath(), manifest.isFile());
+
+        List<String> videoIds = readManifest(manifest);
+        DownloaderImpl downloader = DownloaderImpl.replaying(dir);
+        ExtractorFixtures fixtures = downloader.fixtures();
+        NewPipe.init(downloader);
+        // No hedging: one thread does all the work, so its allocation counter is complete.
+        YouTubeStreamExtractor extractor = new YouTubeStreamExtractor();
+
+        for (String videoId : videoIds) {
+            for (boolean video : new boolean[] {false, true}) {
+                for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                    fixtures.resetStats();
+                    long allocatedBefore = allocatedBytes();
+                    long startedAt = System.nanoTime();
+                    YouTubeStreamExtractor.ExtractionResult result = extractor.extract(videoId, video, 1);
+                    long totalNanos = System.nanoTime() - startedAt;
+                    long allocated = allocatedBytes() - allocatedBefore;
+                    assertNotNull(result.streamUrl);
+
+                    String phase = round == 0 ? "cold" : round < WARMUP_ROUNDS ? "warmup" : "measured";
+                    System.out.println(String.format(Locale.US,
+                            "extract videoId=%s mode=%s round=%d (%s) totalMs=%.2f fixtureMs=%.2f"
+                                    + " parseMs=%.2f requests=%d allocatedKb=%d",
+                            videoId, video ? "video" : "audio", round, phase,
+                            totalNanos / 1e6, fixtures.servedNanos() / 1e6,
+                            (totalNanos - fixtures.servedNanos()) / 1e6,
+                            fixtures.servedRequests(), allocated < 0 ? -1 : allocated / 1024));
+                }
+            }
+        }
+    }
+
+    private static void recordFixtures(File dir, String videoIdList) throws Exception {
+        NewPipe.init(DownloaderImpl.recording(dir));
+        YouTubeStreamExtractor extractor = new YouTubeStreamExtractor();
+        List<String> recorded = new ArrayList<>();
+        for (String videoId : videoIdList.split(",")) {
+            String trimmed = videoId.trim();
+            if (trimmed.isEmpty()) continue;
+            extractor.extract(trimmed, false, 1);
+            extractor.extract(trimmed, true, 1);
+            recorded.add(trimmed);
+        }
+        Files.write(new File(dir, MANIFEST).toPath(), recorded, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readManifest(File manifest) throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) ids.add(trimmed);
+        }
+        return ids;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1L;
+    }
+}
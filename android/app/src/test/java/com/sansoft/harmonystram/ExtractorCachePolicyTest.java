@@ -0,0 +1,42 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import okhttp3.HttpUrl;
+
+public class ExtractorCachePolicyTest {
+
+    @Test
+    public void playerScript_isCachedLongest() {
+        assertEquals(ExtractorCachePolicy.PLAYER_SCRIPT_MAX_AGE_SECONDS, maxAge("GET",
+                "https://www.youtube.com/s/player/1f8742dc/player_ias.vflset/en_US/base.js"));
+    }
+
+    @Test
+    public void bootstrapPages_areCachedBriefly() {
+        assertEquals(ExtractorCachePolicy.PLAYER_BOOTSTRAP_MAX_AGE_SECONDS,
+                maxAge("GET", "https://www.youtube.com/iframe_api"));
+        assertEquals(ExtractorCachePolicy.PLAYER_BOOTSTRAP_MAX_AGE_SECONDS,
+                maxAge("GET", "https://www.youtube.com/embed/dQw4w9WgXcQ"));
+        assertEquals(ExtractorCachePolicy.SERVICE_WORKER_MAX_AGE_SECONDS,
+                maxAge("GET", "https://www.youtube.com/sw.js"));
+    }
+
+    @Test
+    public void perVideoRequests_areNeverCached() {
+        assertEquals(ExtractorCachePolicy.NOT_CACHEABLE,
+                maxAge("POST", "https://www.youtube.com/youtubei/v1/player?key=x"));
+        assertEquals(ExtractorCachePolicy.NOT_CACHEABLE,
+                maxAge("GET", "https://www.youtube.com/watch?v=dQw4w9WgXcQ"));
+        assertEquals(ExtractorCachePolicy.NOT_CACHEABLE,
+                maxAge("POST", "https://www.youtube.com/s/player/1f8742dc/base.js"));
+        assertEquals(ExtractorCachePolicy.NOT_CACHEABLE,
+                maxAge("GET", "https://evil.example.com/s/player/1f8742dc/base.js"));
+    }
+
+    private static long maxAge(String method, String url) {
+        return ExtractorCachePolicy.maxAgeSeconds(method, HttpUrl.get(url));
+    }
+}
@@ -0,0 +1,39 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class ExtractorFixturesTest {
+
+    @Test
+    public void normalizedKey_ignoresPerRequestNonces() {
+        assertEquals(
+                ExtractorFixtures.normalizedKey("GET", "https://www.youtube.com/watch?v=abc&t=111&cpn=x1", null),
+                ExtractorFixtures.normalizedKey("GET", "https://www.youtube.com/watch?v=abc&t=222&cpn=y2", null));
+        assertEquals(
+                ExtractorFixtures.normalizedKey("POST", "https://youtubei.googleapis.com/youtubei/v1/player",
+                        body("{\"videoId\":\"abc\",\"cpn\":\"AAAA\"}")),
+                ExtractorFixtures.normalizedKey("POST", "https://youtubei.googleapis.com/youtubei/v1/player",
+                        body("{\"videoId\":\"abc\",\"cpn\":\"BBBB\"}")));
+    }
+
+    @Test
+    public void normalizedKey_keepsRequestIdentity() {
+        assertNotEquals(
+                ExtractorFixtures.normalizedKey("GET", "https://www.youtube.com/watch?v=abc", null),
+                ExtractorFixtures.normalizedKey("GET", "https://www.youtube.com/watch?v=def", null));
+        assertNotEquals(
+                ExtractorFixtures.normalizedKey("POST", "https://youtubei.googleapis.com/youtubei/v1/player",
+                        body("{\"videoId\":\"abc\"}")),
+                ExtractorFixtures.normalizedKey("POST", "https://youtubei.googleapis.com/youtubei/v1/player",
+                        body("{\"videoId\":\"def\"}")));
+    }
+
+    private static byte[] body(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
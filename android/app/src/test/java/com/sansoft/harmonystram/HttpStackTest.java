@@ -0,0 +1,24 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HttpStackTest {
+
+    @Test
+    public void isYouTubeHost_coversExtractorAndPlayerHosts() {
+        assertTrue(HttpStack.DefaultHeaders.isYouTubeHost("www.youtube.com"));
+        assertTrue(HttpStack.DefaultHeaders.isYouTubeHost("youtubei.googleapis.com"));
+        assertTrue(HttpStack.DefaultHeaders.isYouTubeHost("rr3---sn-abc.googlevideo.com"));
+        assertTrue(HttpStack.DefaultHeaders.isYouTubeHost("i.ytimg.com"));
+    }
+
+    @Test
+    public void isYouTubeHost_rejectsOtherHosts() {
+        assertFalse(HttpStack.DefaultHeaders.isYouTubeHost("example.com"));
+        assertFalse(HttpStack.DefaultHeaders.isYouTubeHost("notyoutube.com"));
+        assertFalse(HttpStack.DefaultHeaders.isYouTubeHost("youtube.com.example.net"));
+    }
+}
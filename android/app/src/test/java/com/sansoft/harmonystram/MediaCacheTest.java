@@ -0,0 +1,49 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class MediaCacheTest {
+
+    @Test
+    public void cacheKeyFor_isStableAcrossReSignedUrls() {
+        String first = "https://rr1---sn-abc.googlevideo.com/videoplayback?expire=1700000000&itag=251&sig=AAA";
+        String second = "https://rr4---sn-xyz.googlevideo.com/videoplayback?itag=251&expire=1700009999&sig=BBB";
+
+        assertEquals("abc123:251", MediaCache.cacheKeyFor("abc123", first));
+        assertEquals(MediaCache.cacheKeyFor("abc123", first), MediaCache.cacheKeyFor("abc123", second));
+    }
+
+    @Test
+    public void cacheKeyFor_separatesFormats() {
+        assertEquals("abc123:140", MediaCache.cacheKeyFor("abc123",
+                "https://rr1---sn-abc.googlevideo.com/videoplayback?itag=140"));
+    }
+
+    @Test
+    public void cacheKeyFor_separatesAudioTracksSharingAnItag() {
+        String english = "https://rr1---sn-abc.googlevideo.com/videoplayback?itag=251"
+                + "&xtags=acont%3Doriginal%3Alang%3Den&clen=3456789&sig=AAA";
+        String dubbed = "https://rr1---sn-abc.googlevideo.com/videoplayback?itag=251"
+                + "&xtags=acont%3Ddubbed%3Alang%3Dde&clen=3456789&sig=AAA";
+
+        assertEquals("abc123:251:clen=3456789:xtags=acont%3Doriginal%3Alang%3Den",
+                MediaCache.cacheKeyFor("abc123", english));
+        assertNotEquals(MediaCache.cacheKeyFor("abc123", english), MediaCache.cacheKeyFor("abc123", dubbed));
+    }
+
+    @Test
+    public void cacheKeyFor_separatesReEncodesOfOneItag() {
+        String url = "https://rr1---sn-abc.googlevideo.com/videoplayback?itag=140&clen=";
+        assertNotEquals(MediaCache.cacheKeyFor("abc123", url + "100"), MediaCache.cacheKeyFor("abc123", url + "200"));
+    }
+
+    @Test
+    public void cacheKeyFor_fallsBackToUrlKeyWithoutItag() {
+        assertNull(MediaCache.cacheKeyFor("abc123", "https://example.com/track.mp3"));
+        assertNull(MediaCache.cacheKeyFor(null, "https://rr1---sn-abc.googlevideo.com/videoplayback?itag=251"));
+    }
+}
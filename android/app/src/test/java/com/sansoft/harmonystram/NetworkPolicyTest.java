@@ -0,0 +1,33 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class NetworkPolicyTest {
+
+    @Test
+    public void prefetchDepth_followsNetworkClass() {
+        assertEquals(4, NetworkPolicy.prefetchDepth(NetworkPolicy.NetworkClass.UNMETERED, false, 2));
+        assertEquals(1, NetworkPolicy.prefetchDepth(NetworkPolicy.NetworkClass.METERED, false, 2));
+        assertEquals(0, NetworkPolicy.prefetchDepth(NetworkPolicy.NetworkClass.ROAMING, false, 2));
+        assertEquals(0, NetworkPolicy.prefetchDepth(NetworkPolicy.NetworkClass.OFFLINE, false, 2));
+    }
+
+    @Test
+    public void dataSaver_overridesUnmeteredNetwork() {
+        assertEquals(0, NetworkPolicy.prefetchDepth(NetworkPolicy.NetworkClass.UNMETERED, true, 2));
+        assertEquals(0, NetworkPolicy.maxVideoHeight(NetworkPolicy.NetworkClass.UNMETERED, true));
+        assertEquals(BandwidthEstimator.MIN_ADEQUATE_AUDIO_BPS,
+                NetworkPolicy.audioBitrateCap(NetworkPolicy.NetworkClass.UNMETERED, true));
+    }
+
+    @Test
+    public void meteredNetwork_capsAudioAndVideo() {
+        assertEquals(BandwidthEstimator.DEFAULT_AUDIO_TARGET_BPS,
+                NetworkPolicy.audioBitrateCap(NetworkPolicy.NetworkClass.METERED, false));
+        assertEquals(480, NetworkPolicy.maxVideoHeight(NetworkPolicy.NetworkClass.METERED, false));
+        assertEquals(NetworkPolicy.DEFAULT_MAX_VIDEO_HEIGHT,
+                NetworkPolicy.maxVideoHeight(NetworkPolicy.NetworkClass.UNMETERED, false));
+    }
+}
@@ -0,0 +1,111 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+
+public class PlaybackJournalTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void edits_roundTripThroughANewInstance() throws IOException {
+        File file = new File(tmp.getRoot(), "queue.journal");
+        PlaybackJournal journal = new PlaybackJournal(file, DIRECT);
+        assertFalse(journal.exists());
+        journal.load();
+        journal.replaceQueue(Arrays.asList(item("a"), item("c")));
+        journal.insert(1, Collections.singletonList(item("b")));
+        journal.setLiked("a", true);
+        journal.setLiked("c", true);
+        journal.setLiked("a", false);
+        journal.close();
+
+        PlaybackJournal.Contents contents = new PlaybackJournal(file, DIRECT).load();
+        assertEquals(Arrays.asList(item("a"), item("b"), item("c")), contents.queue);
+        assertEquals(Collections.singleton("c"), contents.liked);
+    }
+
+    @Test
+    public void removeAndMove_replayAsRecords() throws IOException {
+        File file = new File(tmp.getRoot(), "queue.journal");
+        PlaybackJournal journal = new PlaybackJournal(file, DIRECT);
+        journal.load();
+        journal.replaceQueue(Arrays.asList(item("a"), item("b"), item("c"), item("d"), item("e")));
+        long rewritten = file.length();
+        journal.remove(1, 1);
+        journal.move(0, 2, 2);
+        journal.close();
+        assertTrue(file.length() > rewritten);
+
+        assertEquals(Arrays.asList(item("d"), item("e"), item("a"), item("c")), replayed(file).queue);
+    }
+
+    @Test
+    public void load_keepsIntactRecordsBeforeATornTail() throws IOException {
+        File file = new File(tmp.getRoot(), "queue.journal");
+        PlaybackJournal journal = new PlaybackJournal(file, DIRECT);
+        journal.load();
+        journal.replaceQueue(Collections.singletonList(item("a")));
+        journal.insert(1, Collections.singletonList(item("b")));
+        journal.close();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] {0, 0, 0, 40, 1, 2, 3});
+        }
+
+        PlaybackJournal reopened = new PlaybackJournal(file, DIRECT);
+        PlaybackJournal.Contents contents = reopened.load();
+        assertEquals(Arrays.asList(item("a"), item("b")), contents.queue);
+        assertNotNull(contents.droppedTail);
+        reopened.insert(2, Collections.singletonList(item("c")));
+        reopened.close();
+
+        assertEquals(Arrays.asList(item("a"), item("b"), item("c")),
+                new PlaybackJournal(file, DIRECT).load().queue);
+    }
+
+    @Test
+    public void compaction_preservesContents() throws IOException {
+        File file = new File(tmp.getRoot(), "queue.journal");
+        PlaybackJournal journal = new PlaybackJournal(file, DIRECT);
+        journal.load();
+        journal.replaceQueue(Arrays.asList(item("a"), item("b")));
+        long appended = 0L;
+        for (int i = 0; appended <= 2 * PlaybackJournal.COMPACT_MIN_BYTES; i++) {
+            journal.setLiked("video-" + (i % 8), i % 3 != 0);
+            appended += 32L;
+        }
+        journal.insert(2, Collections.singletonList(item("c")));
+        journal.setLiked("b", true);
+        journal.close();
+        assertTrue(file.length() < PlaybackJournal.COMPACT_MIN_BYTES);
+
+        PlaybackJournal.Contents expected = replayed(file);
+        assertEquals(Arrays.asList(item("a"), item("b"), item("c")), expected.queue);
+        assertTrue(expected.liked.contains("b"));
+    }
+
+    private static PlaybackJournal.Contents replayed(File file) {
+        return new PlaybackJournal(file, DIRECT).load();
+    }
+
+    private static QueueItem item(String videoId) {
+        return new QueueItem(videoId, "Title " + videoId, "Artist",
+                videoId, "https://i.ytimg.com/vi/" + videoId + "/hqdefault.jpg");
+    }
+}
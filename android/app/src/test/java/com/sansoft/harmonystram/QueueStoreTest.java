@@ -0,0 +1,157 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class QueueStoreTest {
+
+    @Test
+    public void get_derivesDefaultIdAndThumbnail() {
+        QueueStore store = new QueueStore();
+        store.add(new QueueItem("a", "Title", "Artist", "a", ""));
+        store.add(new QueueItem("entry-7", "Other", "Artist", "b", "https://example.com/b.jpg"));
+
+        QueueItem first = store.get(0);
+        assertEquals("a", first.id);
+        assertEquals(QueueStore.defaultThumbnailUrl("a"), first.thumbnailUrl);
+        assertEquals(new QueueItem("entry-7", "Other", "Artist", "b", "https://example.com/b.jpg"), store.get(1));
+    }
+
+    @Test
+    public void edits_keepColumnsAndIndexInStep() {
+        QueueStore store = new QueueStore();
+        List<QueueItem> expected = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) expected.add(item("v" + (i % 300)));
+        store.addAll(expected);
+
+        List<QueueItem> batch = Arrays.asList(item("x"), item("y"), item("v5"));
+        store.insert(10, batch);
+        expected.addAll(10, batch);
+
+        store.remove(100, 250);
+        expected.subList(100, 350).clear();
+
+        store.move(0, 3, 500);
+        List<QueueItem> moved = new ArrayList<>(expected.subList(0, 3));
+        expected.subList(0, 3).clear();
+        expected.addAll(500, moved);
+
+        store.move(700, 2, 4);
+        moved = new ArrayList<>(expected.subList(700, 702));
+        expected.subList(700, 702).clear();
+        expected.addAll(4, moved);
+
+        assertEquals(expected, store.asList());
+        for (String videoId : Arrays.asList("v5", "v0", "x", "v299")) {
+            assertArrayEquals(positionsOf(expected, videoId), store.positionsOf(videoId));
+            assertEquals(expected.indexOf(item(videoId)), store.indexOf(videoId));
+        }
+        assertEquals(-1, store.indexOf("missing"));
+    }
+
+    @Test
+    public void insert_copiesAnotherStore() {
+        QueueStore source = new QueueStore();
+        source.addAll(Arrays.asList(item("a"), item("b")));
+        QueueStore copy = new QueueStore();
+        copy.addAll(source.asList());
+        copy.insert(1, copy.asList());
+
+        assertEquals(Arrays.asList(item("a"), item("a"), item("b"), item("b")), copy.asList());
+    }
+
+    @Test
+    public void editTo_reachesTheTargetWithBulkEdits() {
+        List<QueueItem> base = new ArrayList<>();
+        for (int i = 0; i < 20; i++) base.add(item("v" + i));
+
+        List<QueueItem> appended = new ArrayList<>(base);
+        appended.add(item("new"));
+        assertEdits(base, appended, "insert 20+1");
+
+        List<QueueItem> removed = new ArrayList<>(base);
+        removed.subList(5, 9).clear();
+        assertEdits(base, removed, "remove 5+4");
+
+        List<QueueItem> moved = new ArrayList<>(base);
+        moved.add(12, moved.remove(3));
+        assertEdits(base, moved, "move 3+1->12");
+
+        List<QueueItem> spliced = new ArrayList<>(base);
+        spliced.set(7, item("x"));
+        assertEdits(base, spliced, "remove 7+1", "insert 7+1");
+
+        List<QueueItem> reversed = new ArrayList<>(base);
+        java.util.Collections.reverse(reversed);
+        QueueStore store = new QueueStore();
+        store.addAll(base);
+        assertFalse(store.editTo(reversed, new Recorder()));
+        assertEquals(base, store.asList());
+    }
+
+    @Test
+    public void editTo_matchesItemsWithoutThumbnailsOrIds() {
+        QueueStore store = new QueueStore();
+        store.addAll(Arrays.asList(bare("a"), bare("b")));
+        Recorder recorder = new Recorder();
+
+        assertTrue(store.editTo(Arrays.asList(bare("a"), bare("b"), bare("c")), recorder));
+        assertEquals(Arrays.asList(item("a"), item("b"), item("c")), store.asList());
+        assertEquals(Arrays.asList("insert 2+1"), recorder.edits);
+    }
+
+    private static void assertEdits(List<QueueItem> from, List<QueueItem> to, String... expected) {
+        QueueStore store = new QueueStore();
+        store.addAll(from);
+        Recorder recorder = new Recorder();
+        assertTrue(store.editTo(to, recorder));
+        assertEquals(to, store.asList());
+        assertEquals(Arrays.asList(expected), recorder.edits);
+    }
+
+    private static final class Recorder implements QueueStore.EditListener {
+        final List<String> edits = new ArrayList<>();
+
+        @Override
+        public void onInsert(int index, List<QueueItem> items) {
+            edits.add("insert " + index + "+" + items.size());
+        }
+
+        @Override
+        public void onRemove(int from, int count) {
+            edits.add("remove " + from + "+" + count);
+        }
+
+        @Override
+        public void onMove(int from, int count, int to) {
+            edits.add("move " + from + "+" + count + "->" + to);
+        }
+    }
+
+    private static int[] positionsOf(List<QueueItem> items, String videoId) {
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (videoId.equals(items.get(i).videoId)) found.add(i);
+        }
+        int[] positions = new int[found.size()];
+        for (int i = 0; i < positions.length; i++) positions[i] = found.get(i);
+        return positions;
+    }
+
+    private static QueueItem bare(String videoId) {
+        return new QueueItem(null, "Title " + videoId, "Artist", videoId, "");
+    }
+
+    private static QueueItem item(String videoId) {
+        return new QueueItem(videoId, "Title " + videoId, "Artist", videoId,
+                QueueStore.defaultThumbnailUrl(videoId));
+    }
+}
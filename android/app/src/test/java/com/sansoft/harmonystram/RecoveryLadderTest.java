@@ -0,0 +1,67 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RecoveryLadderTest {
+
+    @Test
+    public void next_climbsRungsInOrderWithSeparateBudgets() {
+        RecoveryLadder ladder = new RecoveryLadder(2, 1, 1);
+        assertEquals(RecoveryLadder.Rung.RETRY_SAME, ladder.next("abc", 1_000L, true, true));
+        assertEquals(RecoveryLadder.Rung.RETRY_SAME, ladder.next("abc", 1_000L, true, true));
+        assertEquals(RecoveryLadder.Rung.FAILOVER, ladder.next("abc", 1_000L, true, true));
+        // The failover source gets its own retries before the ladder moves on.
+        assertEquals(RecoveryLadder.Rung.RETRY_SAME, ladder.next("abc", 1_000L, true, false));
+        assertEquals(RecoveryLadder.Rung.RETRY_SAME, ladder.next("abc", 1_000L, true, false));
+        assertEquals(RecoveryLadder.Rung.RE_EXTRACT, ladder.next("abc", 1_000L, true, false));
+        assertEquals(RecoveryLadder.Rung.RETRY_SAME, ladder.next("abc", 1_000L, true, false));
+        assertEquals(RecoveryLadder.Rung.RETRY_SAME, ladder.next("abc", 1_000L, true, false));
+        assertEquals(RecoveryLadder.Rung.GIVE_UP, ladder.next("abc", 1_000L, true, false));
+    }
+
+    @Test
+    public void next_skipsSameUrlRetryForNonIoErrors() {
+        RecoveryLadder ladder = new RecoveryLadder(2, 1, 1);
+        assertEquals(RecoveryLadder.Rung.FAILOVER, ladder.next("abc", 0L, false, true));
+        assertEquals(RecoveryLadder.Rung.RE_EXTRACT, ladder.next("abc", 0L, false, true));
+        assertEquals(RecoveryLadder.Rung.GIVE_UP, ladder.next("abc", 0L, false, true));
+    }
+
+    @Test
+    public void next_startsOverForNewTrackOrAfterStablePlayback() {
+        RecoveryLadder ladder = new RecoveryLadder(0, 0, 1);
+        ladder.onPlayingChanged(true, 0L);
+        assertEquals(RecoveryLadder.Rung.RE_EXTRACT, ladder.next("abc", 1_000L, true, false));
+        assertEquals(RecoveryLadder.Rung.GIVE_UP, ladder.next("abc", 5_000L, true, false));
+        assertEquals(RecoveryLadder.Rung.RE_EXTRACT,
+                ladder.next("abc", 5_000L + RecoveryLadder.STABLE_PLAYBACK_MS, true, false));
+        assertEquals(RecoveryLadder.Rung.RE_EXTRACT, ladder.next("xyz", 0L, true, false));
+    }
+
+    @Test
+    public void next_countsOnlyTimeSpentPlaying() {
+        RecoveryLadder ladder = new RecoveryLadder(0, 0, 1);
+        assertEquals(RecoveryLadder.Rung.RE_EXTRACT, ladder.next("abc", 0L, true, false));
+        // Stalled or paused: a minute passes without playback.
+        assertEquals(RecoveryLadder.Rung.GIVE_UP, ladder.next("abc", 60_000L, true, false));
+
+        ladder.onPlayingChanged(true, 60_000L);
+        ladder.onPlayingChanged(false, 70_000L);
+        ladder.onPlayingChanged(true, 100_000L);
+        assertEquals(RecoveryLadder.Rung.GIVE_UP, ladder.next("abc", 105_000L, true, false));
+        ladder.onPlayingChanged(false, 115_000L);
+        ladder.onPlayingChanged(true, 200_000L);
+        assertEquals(RecoveryLadder.Rung.RE_EXTRACT, ladder.next("abc", 210_000L, true, false));
+    }
+
+    @Test
+    public void reset_restoresFullBudgets() {
+        RecoveryLadder ladder = new RecoveryLadder(0, 0, 1);
+        assertEquals(RecoveryLadder.Rung.RE_EXTRACT, ladder.next("abc", 0L, true, false));
+        assertEquals(RecoveryLadder.Rung.GIVE_UP, ladder.next("abc", 0L, true, false));
+        ladder.reset();
+        assertEquals(RecoveryLadder.Rung.RE_EXTRACT, ladder.next("abc", 0L, true, false));
+    }
+}
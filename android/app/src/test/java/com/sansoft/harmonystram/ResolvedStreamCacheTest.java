@@ -0,0 +1,149 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+
+public class ResolvedStreamCacheTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void parseExpiryMs_readsExpireQueryParameter() {
+        assertEquals(1_700_000_000_000L, ResolvedStreamCache.parseExpiryMs(
+                "https://rr1---sn-abc.googlevideo.com/videoplayback?expire=1700000000&itag=251"));
+        assertEquals(1_700_000_000_000L, ResolvedStreamCache.parseExpiryMs(
+                "https://rr1---sn-abc.googlevideo.com/videoplayback?itag=251&expire=1700000000"));
+    }
+
+    @Test
+    public void parseExpiryMs_ignoresUrlsWithoutExpiry() {
+        assertEquals(0L, ResolvedStreamCache.parseExpiryMs("https://example.com/track.mp3"));
+        assertEquals(0L, ResolvedStreamCache.parseExpiryMs("https://example.com/a?notexpire=1700000000"));
+        assertEquals(0L, ResolvedStreamCache.parseExpiryMs(null));
+    }
+
+    @Test
+    public void isStillValid_honoursSignedExpiryThenDefaultTtl() {
+        long now = System.currentTimeMillis();
+        assertTrue(ResolvedStreamCache.isStillValid(urlExpiringIn(3600), now, now));
+        assertFalse(ResolvedStreamCache.isStillValid(urlExpiringIn(30), now, now));
+        assertTrue(ResolvedStreamCache.isStillValid("https://example.com/a.m4a", now - 60_000L, now));
+        assertFalse(ResolvedStreamCache.isStillValid("https://example.com/a.m4a", now - 10 * 60_000L, now));
+        assertFalse(ResolvedStreamCache.isStillValid(null, now, now));
+    }
+
+    @Test
+    public void get_returnsEntryPerMode() {
+        ResolvedStreamCache cache = newCache(tmp.getRoot(), 8);
+        cache.put("abc", false, result(urlExpiringIn(3600)));
+
+        assertNotNull(cache.get("abc", false));
+        assertNull(cache.get("abc", true));
+    }
+
+    @Test
+    public void get_dropsUrlsThatAreAboutToExpire() {
+        ResolvedStreamCache cache = newCache(tmp.getRoot(), 8);
+        cache.put("abc", false, result(urlExpiringIn(30)));
+
+        assertNull(cache.get("abc", false));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        ResolvedStreamCache cache = newCache(tmp.getRoot(), 2);
+        cache.put("a", false, result(urlExpiringIn(3600)));
+        cache.put("b", false, result(urlExpiringIn(3600)));
+        cache.get("a", false);
+        cache.put("c", false, result(urlExpiringIn(3600)));
+
+        assertNotNull(cache.get("a", false));
+        assertNull(cache.get("b", false));
+        assertNotNull(cache.get("c", false));
+    }
+
+    @Test
+    public void invalidate_dropsBothModes() {
+        ResolvedStreamCache cache = newCache(tmp.getRoot(), 8);
+        cache.put("abc", false, result(urlExpiringIn(3600)));
+        cache.put("abc", true, result(urlExpiringIn(3600)));
+
+        cache.invalidate("abc");
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void loadAsync_restoresPersistedEntries() {
+        String url = urlExpiringIn(3600);
+        newCache(tmp.getRoot(), 8).put("abc", true, result(url));
+
+        ResolvedStreamCache reloaded = newCache(tmp.getRoot(), 8);
+        reloaded.loadAsync();
+
+        YouTubeStreamExtractor.ExtractionResult restored = reloaded.get("abc", true);
+        assertNotNull(restored);
+        assertEquals(url, restored.streamUrl);
+        assertNull(restored.videoStreamUrl);
+    }
+
+    @Test
+    public void loadAsync_restoresStreamKindManifestAndFallbacks() {
+        String url = urlExpiringIn(3600);
+        String fallback = urlExpiringIn(7200);
+        newCache(tmp.getRoot(), 8).put("abc", true, new YouTubeStreamExtractor.ExtractionResult(
+                url, url, null, YouTubeStreamExtractor.StreamKind.DASH, false, "<MPD/>",
+                Collections.singletonList(fallback)));
+
+        ResolvedStreamCache reloaded = newCache(tmp.getRoot(), 8);
+        reloaded.loadAsync();
+
+        YouTubeStreamExtractor.ExtractionResult restored = reloaded.get("abc", true);
+        assertNotNull(restored);
+        assertEquals(YouTubeStreamExtractor.StreamKind.DASH, restored.kind);
+        assertEquals("<MPD/>", restored.dashManifest);
+        assertEquals(Collections.singletonList(fallback), restored.fallbackUrls);
+    }
+
+    @Test
+    public void setPolicyStrictness_evictsEntriesResolvedUnderALooserPolicy() {
+        ResolvedStreamCache cache = newCache(tmp.getRoot(), 8);
+        cache.put("wifi", false, result(urlExpiringIn(3600)));
+        assertTrue(cache.setPolicyStrictness(1));
+        cache.put("metered", false, result(urlExpiringIn(3600)));
+        cache.put("late", false, result(urlExpiringIn(3600)), 0);
+
+        assertNull(cache.get("wifi", false));
+        assertNull(cache.get("late", false));
+        assertNotNull(cache.get("metered", false));
+        assertFalse(cache.setPolicyStrictness(0));
+        assertNotNull(cache.get("metered", false));
+    }
+
+    private static ResolvedStreamCache newCache(File dir, int maxEntries) {
+        return new ResolvedStreamCache(new File(dir, "resolved.bin"), maxEntries, DIRECT);
+    }
+
+    private static YouTubeStreamExtractor.ExtractionResult result(String url) {
+        return new YouTubeStreamExtractor.ExtractionResult(url, url, null);
+    }
+
+    private static String urlExpiringIn(long seconds) {
+        long expire = System.currentTimeMillis() / 1000L + seconds;
+        return "https://rr1---sn-abc.googlevideo.com/videoplayback?expire=" + expire + "&itag=251";
+    }
+}
@@ -0,0 +1,125 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class StatePublisherTest {
+
+    private static final class FakeScheduler implements StatePublisher.Scheduler {
+        long now;
+        final List<long[]> due = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override public long uptimeMs() { return now; }
+
+        @Override public void postDelayed(Runnable task, long delayMs) {
+            tasks.add(task);
+            due.add(new long[] {now + delayMs});
+        }
+
+        @Override public void cancel(Runnable task) {
+            int index;
+            while ((index = tasks.indexOf(task)) >= 0) {
+                tasks.remove(index);
+                due.remove(index);
+            }
+        }
+
+        void advanceTo(long timeMs) {
+            now = timeMs;
+            boolean ran = true;
+            while (ran) {
+                ran = false;
+                Iterator<Runnable> taskIt = tasks.iterator();
+                Iterator<long[]> dueIt = due.iterator();
+                while (taskIt.hasNext()) {
+                    Runnable task = taskIt.next();
+                    long at = dueIt.next()[0];
+                    if (at <= now) {
+                        taskIt.remove();
+                        dueIt.remove();
+                        task.run();
+                        ran = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private final StatePublisher publisher = new StatePublisher(scheduler);
+    private final List<Integer> deliveries = new ArrayList<>();
+
+    @Test
+    public void publish_coalescesBurstIntoOneDelivery() {
+        publisher.subscribe(PlaybackState.FIELDS_ALL, 0L, PlaybackState.FIELDS_ALL,
+                (state, changed) -> deliveries.add(changed));
+        publisher.publish(state("a", false, 0L, 0L));
+        publisher.publish(state("b", false, 0L, 0L));
+        publisher.publish(state("b", true, 0L, 0L));
+        scheduler.advanceTo(0L);
+
+        assertEquals(1, deliveries.size());
+        assertEquals("b", publisher.current().videoId);
+    }
+
+    @Test
+    public void publish_rateLimitsPositionButNotUrgentFields() {
+        publisher.subscribe(PlaybackState.FIELDS_ALL, 1_000L,
+                PlaybackState.FIELDS_ALL & ~PlaybackState.FIELD_POSITION,
+                (state, changed) -> deliveries.add(changed));
+        publisher.publish(state("a", true, 0L, 0L));
+        scheduler.advanceTo(0L);
+        deliveries.clear();
+
+        publisher.publish(state("a", true, 250L, 250L));
+        publisher.publish(state("a", true, 500L, 500L));
+        scheduler.advanceTo(500L);
+        assertEquals(0, deliveries.size());
+
+        scheduler.advanceTo(1_000L);
+        assertEquals(1, deliveries.size());
+        assertEquals(PlaybackState.FIELD_POSITION, (int) deliveries.get(0));
+
+        publisher.publish(state("a", false, 1_100L, 1_100L));
+        scheduler.advanceTo(1_100L);
+        assertEquals(2, deliveries.size());
+    }
+
+    @Test
+    public void publish_skipsSubscribersWithoutInterestAndUnchangedStates() {
+        publisher.subscribe(PlaybackState.FIELD_PLAYING, 0L, PlaybackState.FIELDS_ALL,
+                (state, changed) -> deliveries.add(changed));
+        publisher.publish(state("a", true, 0L, 0L));
+        scheduler.advanceTo(0L);
+        deliveries.clear();
+
+        publisher.publish(state("a", true, 1_000L, 1_000L));
+        publisher.publish(state("a", true, 1_000L, 1_000L));
+        scheduler.advanceTo(2_000L);
+        assertEquals(0, deliveries.size());
+    }
+
+    @Test
+    public void changesFrom_flagsSeekOnlyForUnexplainedJumps() {
+        PlaybackState playing = state("a", true, 10_000L, 0L);
+        assertEquals(PlaybackState.FIELD_POSITION, state("a", true, 11_000L, 1_000L).changesFrom(playing));
+        assertEquals(PlaybackState.FIELD_POSITION | PlaybackState.FIELD_SEEK,
+                state("a", true, 60_000L, 1_000L).changesFrom(playing));
+
+        PlaybackState paused = state("a", false, 10_000L, 0L);
+        assertEquals(PlaybackState.FIELD_POSITION | PlaybackState.FIELD_SEEK,
+                state("a", false, 13_000L, 1_000L).changesFrom(paused));
+    }
+
+    private static PlaybackState state(String videoId, boolean playing, long positionMs, long capturedAtMs) {
+        return new PlaybackState("Title", "Artist", null, videoId, playing, false,
+                positionMs, 180_000L, 0, 1, 0, false, null, false, capturedAtMs);
+    }
+}
@@ -0,0 +1,58 @@
+package com.sansoft.harmonystram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class YouTubeStreamExtractorTest {
+
+    // YouTube's audio ladder as NewPipe reports it: itag, average bitrate in kbit/s, format.
+    private static final Object[][] AUDIO_STREAMS = {
+            {139, 48, "M4A"},
+            {249, 50, "WEBMA_OPUS"},
+            {250, 70, "WEBMA_OPUS"},
+            {140, 128, "M4A"},
+            {251, 160, "WEBMA_OPUS"},
+    };
+
+    @Test
+    public void audioPreferenceScore_picksLowestAdequateStreamOnWeakLink() {
+        assertEquals(249, bestItag(BandwidthEstimator.targetAudioBitrate(250_000L)));
+    }
+
+    @Test
+    public void audioPreferenceScore_picksBestStreamOnGoodLink() {
+        assertEquals(251, bestItag(BandwidthEstimator.targetAudioBitrate(20_000_000L)));
+    }
+
+    @Test
+    public void audioPreferenceScore_penalizesStreamsBelowAdequateBitrate() {
+        long target = BandwidthEstimator.MIN_ADEQUATE_AUDIO_BPS;
+        assertTrue(YouTubeStreamExtractor.audioPreferenceScore(600, 32, "WEBMA_OPUS", false, target)
+                > YouTubeStreamExtractor.audioPreferenceScore(140, 128, "M4A", false, target));
+    }
+
+    @Test
+    public void audioPreferenceScore_fallsBackToKnownItagsWithoutBitrate() {
+        long target = BandwidthEstimator.DEFAULT_AUDIO_TARGET_BPS;
+        int opus = YouTubeStreamExtractor.audioPreferenceScore(251, -1, "WEBMA_OPUS", false, target);
+        int m4a = YouTubeStreamExtractor.audioPreferenceScore(140, -1, "M4A", false, target);
+        int other = YouTubeStreamExtractor.audioPreferenceScore(249, -1, "WEBMA_OPUS", false, target);
+        assertTrue(opus < m4a && m4a < other);
+    }
+
+    private static int bestItag(long targetBitrateBps) {
+        int bestItag = -1;
+        int bestScore = Integer.MAX_VALUE;
+        for (Object[] stream : AUDIO_STREAMS) {
+            int score = YouTubeStreamExtractor.audioPreferenceScore(
+                    (Integer) stream[0], (Integer) stream[1], (String) stream[2], false, targetBitrateBps);
+            if (score < bestScore) {
+                bestScore = score;
+                bestItag = (Integer) stream[0];
+            }
+        }
+        return bestItag;
+    }
+}
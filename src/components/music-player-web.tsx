@@ -118,6 +118,7 @@ declare global {
         positionMs: number, durationMs: number, thumbnailUrl: string,
       ) => void;
       getState?: () => void;
+      notifyAuthChanged?: () => void;
     };
     NativePlayer?: {
       postMessage?: (message: string) => void;
@@ -80,6 +80,9 @@ export const FirebaseProvider: React.FC<FirebaseProviderProps> = ({
       auth,
       (firebaseUser) => { // Auth state determined
         setUserAuthState({ user: firebaseUser, isUserLoading: false, userError: null });
+        // Sign-in/sign-out changes the cookies the Android shell sends with extractor
+        // and media requests; drop its cached copies.
+        window.HarmonyNative?.notifyAuthChanged?.();
       },
       (error) => { // Auth listener error
         console.error("FirebaseProvider: onAuthStateChanged error:", error);